@@ -0,0 +1,479 @@
+package com.nullprogram.sudoku.bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import com.nullprogram.sudoku.BatchSolver;
+import com.nullprogram.sudoku.Board;
+import com.nullprogram.sudoku.Expander;
+import com.nullprogram.sudoku.PuzzleFile;
+import com.nullprogram.sudoku.Rater;
+import com.nullprogram.sudoku.Generator;
+import com.nullprogram.sudoku.Metrics;
+import com.nullprogram.sudoku.GridGenerator;
+import com.nullprogram.sudoku.Solver;
+import com.nullprogram.sudoku.BacktrackSolver;
+import com.nullprogram.sudoku.DancingLinksSolver;
+import com.nullprogram.sudoku.TimeoutException;
+import com.nullprogram.sudoku.UniquenessChecker;
+
+/**
+ * Benchmarks for generation, solving, uniqueness checking and loading.
+ *
+ * Every benchmark draws from a fixed seed and works on a fixed corpus
+ * so runs can be compared. Arguments select benchmarks by name prefix
+ * and no arguments runs them all. The system properties
+ * <code>bench.warmup</code>, <code>bench.iterations</code> and
+ * <code>bench.time</code> (milliseconds per iteration) tune the
+ * harness. The allocation check fails the run if a uniqueness check
+ * allocates anything, and the node count fails it if the checker
+ * disagrees with Dancing Links or the baseline cannot be reproduced.
+ */
+public final class Benchmarks {
+
+    private static final long SEED = 0x5EED;
+
+    /* Number of puzzles in the load benchmark files. */
+    private static final int LOAD_PUZZLES = 100000;
+
+    /* Nodes the hard corpus took before branching on the most
+     * constrained cell, as recounted by ScanSearch. */
+    private static final long BASELINE_NODES = 363189164L;
+
+    /* Uniqueness checks run to warm up, then measured, when checking
+     * allocation. The first compiled runs may still allocate. */
+    private static final int ALLOC_CHECKS = 500;
+
+    /* Generated puzzles, and variants of each, in the batch corpus. */
+    private static final int BATCH_SEEDS = 64;
+    private static final int BATCH_VARIANTS = 256;
+
+    private final Harness harness;
+    private final String[] filters;
+
+    /**
+     * Create the benchmark suite.
+     *
+     * @param harness the harness to measure with
+     * @param filters benchmark name prefixes to run
+     */
+    private Benchmarks(final Harness harness, final String[] filters) {
+        this.harness = harness;
+        this.filters = filters;
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args names of benchmarks to run
+     */
+    public static void main(final String[] args) {
+        Harness harness = new Harness(Integer.getInteger("bench.warmup", 1),
+                                      Integer.getInteger("bench.iterations", 3),
+                                      Long.getLong("bench.time", 5000L));
+        new Benchmarks(harness, args).runAll();
+    }
+
+    /**
+     * Run every selected benchmark.
+     */
+    private void runAll() {
+        generate("generate.easy", Generator.EASY, Generator.Strategy.CONSTRUCT);
+        generate("generate.medium", Generator.MEDIUM,
+                 Generator.Strategy.CONSTRUCT);
+        generate("generate.hard", Generator.HARD, Generator.Strategy.CONSTRUCT);
+        generate("generate.dig.easy", Generator.EASY, Generator.Strategy.DIG);
+        generate("generate.dig.medium", Generator.MEDIUM,
+                 Generator.Strategy.DIG);
+        generate("generate.dig.hard", Generator.HARD, Generator.Strategy.DIG);
+        size("size.9", 3);
+        size("size.16", 4);
+        size("size.25", 5);
+
+        final Board[] hard = Corpus.hard();
+        final BacktrackSolver solver = new BacktrackSolver(new Random(SEED));
+        final UniquenessChecker checker = new UniquenessChecker();
+        solve("solve.hard", solver, hard);
+        solve("solve.hard.dlx", new DancingLinksSolver(), hard);
+        final Rater rater = new Rater();
+        run("rate.hard", new Harness.Op() {
+            private int next;
+
+            public long run() {
+                return rater.grade(hard[next++ % hard.length]);
+            }
+        });
+        count("count.hard", solver, hard);
+        count("count.hard.dlx", new DancingLinksSolver(), hard);
+        if (selected("nodes.hard")) {
+            nodes(hard);
+        }
+        if (selected("alloc.unique")) {
+            allocation(hard);
+        }
+        run("unique.hard", new Harness.Op() {
+            private int next;
+
+            public long run() {
+                try {
+                    return checker.numSolutions(hard[next++ % hard.length]);
+                } catch (TimeoutException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        if (selected("load")) {
+            load(hard);
+        }
+        if (selected("batch")) {
+            batch();
+        }
+    }
+
+    /**
+     * Benchmark puzzle generation at a difficulty.
+     *
+     * @param name benchmark name
+     * @param givens number of givens to generate
+     * @param strategy how the generator builds puzzles
+     */
+    private void generate(final String name, final int givens,
+                          final Generator.Strategy strategy) {
+        final Generator generator =
+            new Generator(new Random(SEED), Generator.ATTEMPT_NODES,
+                          new Metrics(), strategy);
+        run(name, new Harness.Op() {
+            public long run() {
+                return generator.generate(givens).filled();
+            }
+        });
+    }
+
+    /**
+     * Benchmark generating a grid size, digging as far as possible.
+     *
+     * @param name benchmark name
+     * @param boxSize side of a box
+     */
+    private void size(final String name, final int boxSize) {
+        final GridGenerator generator =
+            new GridGenerator(new Random(SEED), GridGenerator.CHECK_NODES);
+        run(name, new Harness.Op() {
+            public long run() {
+                return generator.generate(boxSize, 0).filled();
+            }
+        });
+    }
+
+    /**
+     * Benchmark solving each of a set of puzzles in turn.
+     *
+     * @param name benchmark name
+     * @param solver the solver to benchmark
+     * @param puzzles the puzzles to solve
+     */
+    private void solve(final String name, final Solver solver,
+                       final Board[] puzzles) {
+        final Board work = new Board();
+        run(name, new Harness.Op() {
+            private int next;
+
+            public long run() {
+                work.copyFrom(puzzles[next++ % puzzles.length]);
+                return solver.solve(work) ? 1 : 0;
+            }
+        });
+    }
+
+    /**
+     * Benchmark counting the solutions of a set of puzzles in turn.
+     *
+     * @param name benchmark name
+     * @param solver the solver to benchmark
+     * @param puzzles the puzzles to check
+     */
+    private void count(final String name, final Solver solver,
+                       final Board[] puzzles) {
+        run(name, new Harness.Op() {
+            private int next;
+
+            public long run() {
+                Board puzzle = puzzles[next++ % puzzles.length];
+                return solver.countSolutions(puzzle, 2);
+            }
+        });
+    }
+
+    /**
+     * Benchmark solving a large corpus in batches against one board at
+     * a time.
+     *
+     * The corpus is symmetry variants of generated puzzles at every
+     * difficulty, the kind of input bulk validation sees, and each
+     * operation solves all of it.
+     */
+    private void batch() {
+        Generator generator =
+            new Generator(new Random(SEED), Generator.ATTEMPT_NODES,
+                          new Metrics(), Generator.Strategy.DIG);
+        Expander expander = new Expander(new Random(SEED));
+        int[] givens = {Generator.EASY, Generator.MEDIUM, Generator.HARD};
+        final Board[] corpus = new Board[BATCH_SEEDS * BATCH_VARIANTS];
+        for (int i = 0; i < BATCH_SEEDS; i++) {
+            Board seed = generator.generate(givens[i % givens.length]);
+            for (int j = 0; j < BATCH_VARIANTS; j++) {
+                corpus[i * BATCH_VARIANTS + j] = expander.transform(seed);
+            }
+        }
+        System.out.printf("batch: %d puzzles%n", corpus.length);
+        final Board[] work = new Board[corpus.length];
+        for (int i = 0; i < work.length; i++) {
+            work[i] = new Board();
+        }
+        final BatchSolver batch = new BatchSolver();
+        run("batch.solve", new Harness.Op() {
+            public long run() {
+                for (int i = 0; i < work.length; i++) {
+                    work[i].copyFrom(corpus[i]);
+                }
+                return batch.solve(work);
+            }
+        });
+        loop("batch.loop.dlx", new DancingLinksSolver(), corpus, work);
+        loop("batch.loop.backtrack", new BacktrackSolver(new Random(SEED)),
+             corpus, work);
+    }
+
+    /**
+     * Benchmark solving a corpus one board at a time.
+     *
+     * @param name benchmark name
+     * @param solver the solver to benchmark
+     * @param corpus the puzzles to solve
+     * @param work boards to solve them in
+     */
+    private void loop(final String name, final Solver solver,
+                      final Board[] corpus, final Board[] work) {
+        run(name, new Harness.Op() {
+            public long run() {
+                long solved = 0;
+                for (int i = 0; i < work.length; i++) {
+                    work[i].copyFrom(corpus[i]);
+                    if (solver.solve(work[i])) {
+                        solved++;
+                    }
+                }
+                return solved;
+            }
+        });
+    }
+
+    /**
+     * Benchmark reading a corpus from text against the binary format.
+     *
+     * Both files hold the same puzzles, symmetry variants of the given
+     * seeds, and each operation reads and decodes every one of them.
+     *
+     * @param seeds the puzzles to expand into a corpus
+     */
+    private void load(final Board[] seeds) {
+        try {
+            final Path text = Files.createTempFile("sudoku", ".txt");
+            final Path binary = Files.createTempFile("sudoku", ".sdk");
+            try {
+                Expander expander = new Expander(new Random(SEED));
+                BufferedWriter out =
+                    Files.newBufferedWriter(text, StandardCharsets.US_ASCII);
+                PuzzleFile.Builder file = new PuzzleFile.Builder(binary);
+                for (int i = 0; i < LOAD_PUZZLES; i++) {
+                    Board puzzle = expander.transform(seeds[i % seeds.length]);
+                    out.write(puzzle.toString());
+                    out.newLine();
+                    file.write(puzzle);
+                }
+                out.close();
+                file.close();
+                System.out.printf("load: %d puzzles, text %d B, binary %d B%n",
+                                  LOAD_PUZZLES, Files.size(text),
+                                  Files.size(binary));
+                loadText(text);
+                loadBinary("load.binary", binary, false);
+                loadBinary("load.binary.reuse", binary, true);
+            } finally {
+                Files.delete(text);
+                Files.delete(binary);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Benchmark parsing a corpus of 81-character lines.
+     *
+     * @param path the text corpus
+     */
+    private void loadText(final Path path) {
+        run("load.text", new Harness.Op() {
+            public long run() {
+                long givens = 0;
+                try {
+                    BufferedReader in = Files.newBufferedReader(
+                        path, StandardCharsets.US_ASCII);
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        givens += Board.parse(line).filled();
+                    }
+                    in.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return givens;
+            }
+        });
+    }
+
+    /**
+     * Benchmark decoding a memory-mapped puzzle file.
+     *
+     * @param name benchmark name
+     * @param path the binary corpus
+     * @param reuse decode into one board rather than a new one each
+     */
+    private void loadBinary(final String name, final Path path,
+                            final boolean reuse) {
+        final Board board = new Board();
+        run(name, new Harness.Op() {
+            public long run() {
+                long givens = 0;
+                try {
+                    PuzzleFile file = new PuzzleFile(path);
+                    for (long i = 0; i < file.size(); i++) {
+                        if (reuse) {
+                            file.get(i, board);
+                            givens += board.filled();
+                        } else {
+                            givens += file.get(i).filled();
+                        }
+                    }
+                    file.close();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                return givens;
+            }
+        });
+    }
+
+    /**
+     * Report the search nodes a uniqueness check visits per puzzle,
+     * before and after branching on the most constrained cell.
+     *
+     * The before column is recounted by {@link ScanSearch} on every
+     * run, so the comparison can be reproduced, and its total must
+     * match the recorded baseline.
+     *
+     * @param puzzles the puzzles to check
+     * @throws IllegalStateException if a count disagrees with Dancing
+     *         Links or the baseline total is not reproduced
+     */
+    private static void nodes(final Board[] puzzles) {
+        Solver dlx = new DancingLinksSolver();
+        ScanSearch scan = new ScanSearch();
+        long total = 0;
+        for (int i = 0; i < puzzles.length; i++) {
+            UniquenessChecker checker = new UniquenessChecker();
+            int expected = dlx.countSolutions(puzzles[i], 2);
+            int found;
+            try {
+                found = checker.numSolutions(puzzles[i]);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException(e);
+            }
+            long before = scan.getNodes();
+            int scanned = scan.numSolutions(puzzles[i]);
+            if (found != expected || scanned != expected) {
+                throw new IllegalStateException("nodes.hard[" + i + "]: "
+                                                 + found + " and " + scanned
+                                                 + " solutions, expected "
+                                                 + expected);
+            }
+            total += checker.getNodes();
+            System.out.printf("nodes.hard[%d] %15d -> %9d nodes%n",
+                              i, scan.getNodes() - before, checker.getNodes());
+        }
+        System.out.printf("nodes.hard %18d -> %9d nodes%n",
+                          scan.getNodes(), total);
+        if (scan.getNodes() != BASELINE_NODES) {
+            throw new IllegalStateException("Baseline of " + BASELINE_NODES
+                                            + " nodes not reproduced.");
+        }
+    }
+
+    /**
+     * Check that uniqueness checks allocate nothing on the heap.
+     *
+     * A round of checks warms the checker up, and the bytes this
+     * thread allocates are then measured around a second round.
+     *
+     * @param puzzles the puzzles to check
+     * @throws IllegalStateException if any bytes were allocated
+     */
+    private static void allocation(final Board[] puzzles) {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        UniquenessChecker checker = new UniquenessChecker();
+        long bytes;
+        try {
+            for (int i = 0; i < ALLOC_CHECKS; i++) {
+                checker.numSolutions(puzzles[i % puzzles.length]);
+            }
+            long before = bean.getCurrentThreadAllocatedBytes();
+            for (int i = 0; i < ALLOC_CHECKS; i++) {
+                checker.numSolutions(puzzles[i % puzzles.length]);
+            }
+            bytes = bean.getCurrentThreadAllocatedBytes() - before;
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.printf("alloc.unique %26d bytes in %d checks%n",
+                          bytes, ALLOC_CHECKS);
+        if (bytes != 0) {
+            throw new IllegalStateException("Uniqueness checks allocated "
+                                            + bytes + " bytes.");
+        }
+    }
+
+    /**
+     * Run a benchmark if it was selected.
+     *
+     * @param name benchmark name
+     * @param op the operation to benchmark
+     */
+    private void run(final String name, final Harness.Op op) {
+        if (selected(name)) {
+            harness.run(name, op);
+        }
+    }
+
+    /**
+     * Determine if a benchmark was selected.
+     *
+     * @param name benchmark name
+     * @return true if the benchmark should run
+     */
+    private boolean selected(final String name) {
+        boolean selected = filters.length == 0;
+        for (String filter : filters) {
+            selected |= name.startsWith(filter);
+        }
+        return selected;
+    }
+}
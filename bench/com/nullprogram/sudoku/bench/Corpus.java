@@ -0,0 +1,50 @@
+package com.nullprogram.sudoku.bench;
+
+import com.nullprogram.sudoku.Board;
+
+/**
+ * Fixed puzzles for the benchmarks to work on.
+ */
+final class Corpus {
+
+    /** Well known puzzles that are hard for search-based solvers. */
+    private static final String[] HARD = {
+        "8..........36......7..9.2...5...7.......457.....1...3...1....68"
+        + "..85...1..9....4..",
+        "1.......2.9.4...5...6...7...5.9.3.......7.......85..4.7.....6."
+        + "..3...9.8...2.....1",
+        "..............3.85..1.2.......5.7.....4...1...9.......5......7"
+        + "3..2.1........4...9",
+        "4.....8.5.3..........7......2.....6.....8.4......1.......6.3.7"
+        + ".5..2.....1.4......",
+        "52...6.........7.13...........4..8..6......5...........418...."
+        + ".....3..2...87.....",
+        "6.....8.3.4.7.................5.4.7.3..2.....1.6.......2.....5"
+        + ".....8.6......1....",
+        "48.3............71.2.......7.5....6....2..8.............1.76.."
+        + ".3.....4......5....",
+        "....14....3....2...7..........9...3.6.1.............8.2.....1."
+        + "4....5.6.....7.8...",
+        "......52..8.4......3...9...5.1...6..2..7........3.....6...1..."
+        + ".......7.4.......3.",
+    };
+
+    /**
+     * Hidden constructor.
+     */
+    private Corpus() {
+    }
+
+    /**
+     * Fresh copies of the hard puzzles.
+     *
+     * @return the hard puzzles
+     */
+    static Board[] hard() {
+        Board[] boards = new Board[HARD.length];
+        for (int i = 0; i < HARD.length; i++) {
+            boards[i] = Board.parse(HARD[i]);
+        }
+        return boards;
+    }
+}
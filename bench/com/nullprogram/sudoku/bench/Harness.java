@@ -0,0 +1,122 @@
+package com.nullprogram.sudoku.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * A small benchmark harness in the spirit of JMH.
+ *
+ * Each benchmark runs for a number of timed warmup iterations, then
+ * for a number of measured iterations. Throughput and the bytes
+ * allocated per operation by the benchmark thread are reported for
+ * the measured iterations.
+ */
+final class Harness {
+
+    /**
+     * A single benchmarked operation.
+     */
+    interface Op {
+
+        /**
+         * Run the operation once.
+         *
+         * @return any result, which is consumed so it is not optimized
+         *         away
+         */
+        long run();
+    }
+
+    private final int warmups;
+    private final int iterations;
+    private final long iterationNanos;
+    private long sink;
+
+    /**
+     * Create a new harness.
+     *
+     * @param warmupCount number of warmup iterations
+     * @param measureCount number of measured iterations
+     * @param millis minimum length of each iteration in milliseconds
+     */
+    Harness(final int warmupCount, final int measureCount,
+            final long millis) {
+        warmups = warmupCount;
+        iterations = measureCount;
+        iterationNanos = millis * 1000000L;
+    }
+
+    /**
+     * Benchmark an operation and print the result.
+     *
+     * @param name name to report the benchmark under
+     * @param op the operation to benchmark
+     */
+    void run(final String name, final Op op) {
+        for (int i = 0; i < warmups; i++) {
+            iteration(op);
+        }
+        long ops = 0;
+        long nanos = 0;
+        long bytes = 0;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int i = 0; i < iterations; i++) {
+            long before = allocated();
+            long start = System.nanoTime();
+            long count = iteration(op);
+            long time = System.nanoTime() - start;
+            bytes += allocated() - before;
+            ops += count;
+            nanos += time;
+            double rate = count * 1e9 / time;
+            min = Math.min(min, rate);
+            max = Math.max(max, rate);
+        }
+        String alloc = "n/a";
+        if (allocated() >= 0) {
+            alloc = String.format("%.1f", (double) bytes / ops);
+        }
+        System.out.printf("%-28s %12.3f ops/s  [%.3f, %.3f]"
+                          + "  %10.3f ms/op  %10s B/op%n",
+                          name, ops * 1e9 / nanos, min, max,
+                          nanos / 1e6 / ops, alloc);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Run one iteration.
+     *
+     * @param op the operation to run
+     * @return number of times the operation ran
+     */
+    private long iteration(final Op op) {
+        long start = System.nanoTime();
+        long count = 0;
+        do {
+            sink += op.run();
+            count++;
+        } while (System.nanoTime() - start < iterationNanos);
+        return count;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread.
+     *
+     * @return allocated bytes, or -1 if the JVM does not track them
+     */
+    private static long allocated() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx =
+                (com.sun.management.ThreadMXBean) bean;
+            if (mx.isThreadAllocatedMemorySupported()
+                    && mx.isThreadAllocatedMemoryEnabled()) {
+                return mx.getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,243 @@
+package com.nullprogram.sudoku.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.nullprogram.sudoku.Board;
+import com.nullprogram.sudoku.Generator;
+import com.nullprogram.sudoku.Histogram;
+import com.nullprogram.sudoku.Metrics;
+import com.nullprogram.sudoku.PuzzleServer;
+
+/**
+ * Drives a {@link PuzzleServer} with concurrent clients and reports
+ * throughput and latency.
+ *
+ * Arguments are <code>[-c clients] [-d seconds] [-u url]</code>.
+ * Without a URL a server is started in this process on a free port.
+ * Each client sends requests in a fixed rotation of the endpoints,
+ * using a fixed set of generated puzzles, and the latency of each
+ * request is measured at the client. Non-200 replies are counted
+ * separately, as a full server refuses requests with 503.
+ */
+public final class LoadTest {
+
+    private static final long SEED = 0x5EED;
+
+    /* Number of distinct puzzles the clients send. */
+    private static final int PUZZLES = 64;
+
+    /* Requests made by each client in turn. */
+    private static final String[] ROTATION = {
+        "solve", "validate", "hint", "solve", "validate", "hint",
+        "generate?difficulty=easy", "generate?difficulty=hard",
+    };
+
+    private final String base;
+    private final String[] puzzles;
+    private final Map<String, Histogram> latencies =
+        new LinkedHashMap<String, Histogram>();
+    private final Histogram total = new Histogram();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Create a load test.
+     *
+     * @param base the server's URL, ending in a slash
+     * @param puzzles puzzles to send, in the 81-character format
+     */
+    private LoadTest(final String base, final String[] puzzles) {
+        this.base = base;
+        this.puzzles = puzzles;
+        for (String path : ROTATION) {
+            if (!latencies.containsKey(path)) {
+                latencies.put(path, new Histogram());
+            }
+        }
+    }
+
+    /**
+     * Run the load test.
+     *
+     * @param args command line arguments
+     * @throws Exception if the server cannot be started or the test is
+     *         interrupted
+     */
+    public static void main(final String[] args) throws Exception {
+        int clients = Runtime.getRuntime().availableProcessors() * 2;
+        long seconds = 10;
+        String url = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-c") && i + 1 < args.length) {
+                clients = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-d") && i + 1 < args.length) {
+                seconds = Long.parseLong(args[++i]);
+            } else if (args[i].equals("-u") && i + 1 < args.length) {
+                url = args[++i];
+            } else {
+                System.err.println("usage: LoadTest"
+                                   + " [-c clients] [-d seconds] [-u url]");
+                return;
+            }
+        }
+        PuzzleServer server = null;
+        if (url == null) {
+            int cpus = Runtime.getRuntime().availableProcessors();
+            server = new PuzzleServer(new InetSocketAddress("localhost", 0),
+                                      cpus * 4, cpus);
+            server.start();
+            url = "http://localhost:" + server.getPort() + "/";
+        } else if (!url.endsWith("/")) {
+            url += "/";
+        }
+        try {
+            new LoadTest(url, puzzles()).run(clients, seconds * 1000);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Generate the puzzles the clients send.
+     *
+     * @return puzzles in the 81-character format
+     */
+    private static String[] puzzles() {
+        Generator generator =
+            new Generator(new Random(SEED), Generator.ATTEMPT_NODES,
+                          new Metrics(), Generator.Strategy.DIG);
+        int[] givens = {Generator.EASY, Generator.MEDIUM, Generator.HARD};
+        String[] puzzles = new String[PUZZLES];
+        for (int i = 0; i < PUZZLES; i++) {
+            puzzles[i] = generator.generate(givens[i % givens.length])
+                .toString();
+        }
+        return puzzles;
+    }
+
+    /**
+     * Run the clients for a while, then print the results.
+     *
+     * @param clients number of concurrent clients
+     * @param millis how long to run
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void run(final int clients, final long millis)
+        throws InterruptedException {
+        final long end = System.currentTimeMillis() + millis;
+        Thread[] threads = new Thread[clients];
+        for (int i = 0; i < clients; i++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    client(id, end);
+                }
+            }, "LoadTest-" + i);
+            threads[i].start();
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d clients, %.1f s, %d requests, %d failed%n",
+                          clients, seconds, total.getCount(),
+                          failures.sum());
+        for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+            report(e.getKey(), e.getValue(), seconds);
+        }
+        report("total", total, seconds);
+    }
+
+    /**
+     * Print the throughput and latency of one kind of request.
+     *
+     * @param name request name
+     * @param latency its latencies in nanoseconds
+     * @param seconds length of the run
+     */
+    private static void report(final String name, final Histogram latency,
+                               final double seconds) {
+        System.out.printf("%-28s %10.1f req/s  p50 %8.3f ms  p99 %8.3f ms"
+                          + "  max %8.3f ms%n",
+                          name, latency.getCount() / seconds,
+                          latency.quantile(0.50) / 1e6,
+                          latency.quantile(0.99) / 1e6,
+                          latency.getMax() / 1e6);
+    }
+
+    /**
+     * Send requests until the end time.
+     *
+     * @param id client number, which picks its starting point
+     * @param end when to stop, in milliseconds
+     */
+    private void client(final int id, final long end) {
+        int next = id;
+        while (System.currentTimeMillis() < end) {
+            String path = ROTATION[next % ROTATION.length];
+            String puzzle = puzzles[next % puzzles.length];
+            next++;
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = request(path, puzzle);
+            } catch (IOException e) {
+                ok = false;
+            }
+            long nanos = System.nanoTime() - start;
+            if (ok) {
+                latencies.get(path).record(nanos);
+                total.record(nanos);
+            } else {
+                failures.increment();
+            }
+        }
+    }
+
+    /**
+     * Make one request and read the whole reply.
+     *
+     * @param path the endpoint and any query
+     * @param puzzle the puzzle to post, unless generating
+     * @return true if the reply was 200
+     * @throws IOException if the request fails
+     */
+    private boolean request(final String path, final String puzzle)
+        throws IOException {
+        HttpURLConnection c =
+            (HttpURLConnection) new URL(base + path).openConnection();
+        if (!path.startsWith("generate")) {
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            OutputStream out = c.getOutputStream();
+            out.write(puzzle.getBytes(StandardCharsets.US_ASCII));
+            out.close();
+        }
+        int status = c.getResponseCode();
+        InputStream in = status == 200 ? c.getInputStream()
+            : c.getErrorStream();
+        if (in != null) {
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            byte[] buf = new byte[256];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sink.write(buf, 0, n);
+            }
+            in.close();
+        }
+        return status == 200;
+    }
+}
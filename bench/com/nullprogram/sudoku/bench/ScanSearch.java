@@ -0,0 +1,105 @@
+package com.nullprogram.sudoku.bench;
+
+import com.nullprogram.sudoku.Board;
+
+/**
+ * The uniqueness check as it was before branching on the most
+ * constrained cell, kept as a baseline for node counts.
+ *
+ * It branches on the first empty cell in row order, trying values from
+ * lowest to highest, with no propagation and no budget, and counts
+ * each call as one node just as {@link
+ * com.nullprogram.sudoku.UniquenessChecker} does.
+ */
+final class ScanSearch {
+
+    /* Search state, with each value stored as its mask bit. */
+    private final int[] cells = new int[81];
+    private final int[] rows = new int[9];
+    private final int[] cols = new int[9];
+    private final int[] boxes = new int[9];
+
+    private long nodes;
+
+    /**
+     * Count a board's solutions, stopping at 2.
+     *
+     * @param grid the board to check, not modified
+     * @return number of solutions
+     */
+    int numSolutions(final Board grid) {
+        for (int i = 0; i < 9; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        for (int i = 0; i < 81; i++) {
+            int val = grid.get(i % 9, i / 9);
+            int bit = val > 0 ? 1 << val : 0;
+            if (((rows[i / 9] | cols[i % 9] | boxes[box(i)]) & bit) != 0) {
+                return 0;
+            }
+            cells[i] = bit;
+            rows[i / 9] |= bit;
+            cols[i % 9] |= bit;
+            boxes[box(i)] |= bit;
+        }
+        return count(0, 2);
+    }
+
+    /**
+     * The number of search nodes visited so far.
+     *
+     * @return total nodes visited
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Count solutions up to a limit, filling cells from start on.
+     *
+     * @param start flat index to begin looking for an empty cell
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions found
+     */
+    private int count(final int start, final int limit) {
+        nodes++;
+        int i = start;
+        while (i < 81 && cells[i] != 0) {
+            i++;
+        }
+        if (i == 81) {
+            return 1;
+        }
+        int r = i / 9;
+        int c = i % 9;
+        int b = box(i);
+        int possible = Board.ALL & ~(rows[r] | cols[c] | boxes[b]);
+        int total = 0;
+        while (possible != 0 && total < limit) {
+            int bit = possible & -possible;
+            possible ^= bit;
+            cells[i] = bit;
+            rows[r] |= bit;
+            cols[c] |= bit;
+            boxes[b] |= bit;
+            total += count(i + 1, limit - total);
+            rows[r] &= ~bit;
+            cols[c] &= ~bit;
+            boxes[b] &= ~bit;
+        }
+        cells[i] = 0;
+        return total;
+    }
+
+    /**
+     * The box of a flat cell index.
+     *
+     * @param i flat cell index
+     * @return box, 0 through 8
+     */
+    private static int box(final int i) {
+        return (i / 27) * 3 + (i % 9) / 3;
+    }
+}
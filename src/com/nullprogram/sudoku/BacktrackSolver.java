@@ -0,0 +1,251 @@
+package com.nullprogram.sudoku;
+
+import java.util.Random;
+
+/**
+ * Solves boards by backtracking over the most constrained empty cell.
+ *
+ * Before each branch, empty cells with a single candidate are filled
+ * in until none remain, and the search then branches on the cell with
+ * the fewest candidates, trying them in a random order. That order is
+ * shuffled in place in an array kept for each depth of the search,
+ * rather than in a new array at every node. A board whose givens
+ * conflict has no solutions and is not searched. Each search is
+ * recorded in a {@link Metrics}.
+ */
+public class BacktrackSolver implements Solver {
+
+    private final Random rng;
+    private final Metrics metrics;
+
+    /**
+     * Create a new solver.
+     */
+    public BacktrackSolver() {
+        this(new Random());
+    }
+
+    /**
+     * Create a new solver that draws from the given randomness.
+     *
+     * @param random source of randomness
+     */
+    public BacktrackSolver(final Random random) {
+        this(random, Metrics.global());
+    }
+
+    /**
+     * Create a new solver that records into the given metrics.
+     *
+     * @param random source of randomness
+     * @param metrics where to record searches
+     */
+    public BacktrackSolver(final Random random, final Metrics metrics) {
+        rng = random;
+        this.metrics = metrics;
+    }
+
+    /** {@inheritDoc} */
+    public final boolean solve(final Board board) {
+        if (!consistent(board)) {
+            return false;
+        }
+        Search search = new Search(board);
+        boolean solved = search.solve(0);
+        metrics.solved(search.nodes);
+        return solved;
+    }
+
+    /** {@inheritDoc} */
+    public final int countSolutions(final Board board, final int limit) {
+        if (!consistent(board)) {
+            return 0;
+        }
+        Search search = new Search(board);
+        int count = search.count(limit);
+        metrics.solved(search.nodes);
+        return count;
+    }
+
+    /**
+     * Check that no value appears twice in a row, column or box.
+     *
+     * The board's own masks cannot tell, and propagation never finds
+     * such a conflict because it only looks at empty cells.
+     *
+     * @param board the board to check
+     * @return true if the values do not conflict
+     */
+    private static boolean consistent(final Board board) {
+        int[] rows = new int[9];
+        int[] cols = new int[9];
+        int[] boxes = new int[9];
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                int val = board.get(x, y);
+                if (val > 0) {
+                    int bit = 1 << val;
+                    int b = (y / 3) * 3 + x / 3;
+                    if (((rows[y] | cols[x] | boxes[b]) & bit) != 0) {
+                        return false;
+                    }
+                    rows[y] |= bit;
+                    cols[x] |= bit;
+                    boxes[b] |= bit;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The state of one search over a board.
+     */
+    private final class Search {
+
+        private final Board work;
+
+        /* Cells filled by propagation, in order, so they can be undone. */
+        private final int[] trail = new int[81];
+        private int top;
+
+        /* Most constrained empty cell found by propagate(). */
+        private int best;
+
+        /* Order of values to try at each depth, created on first use. */
+        private final byte[][] orders = new byte[81][];
+
+        private long nodes;
+
+        /**
+         * Create a search over a board.
+         *
+         * @param board the board to search, which is modified in place
+         */
+        private Search(final Board board) {
+            work = board;
+        }
+
+        /**
+         * Solve the board.
+         *
+         * @param depth number of branches above this one
+         * @return true if a solution was found
+         */
+        private boolean solve(final int depth) {
+            nodes++;
+            int mark = top;
+            if (!propagate()) {
+                return false;
+            }
+            if (best < 0) {
+                return true;
+            }
+            int x = best % 9;
+            int y = best / 9;
+
+            int possible = work.candidates(x, y);
+            byte[] order = orders[depth];
+            if (order == null) {
+                order = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9};
+                orders[depth] = order;
+            }
+            Digits.shuffle(order, rng);
+            for (byte i : order) {
+                if ((possible & (1 << i)) != 0) {
+                    work.set(x, y, i);
+                    if (solve(depth + 1)) {
+                        return true;
+                    }
+                }
+            }
+            work.unset(x, y);
+            undo(mark);
+            return false;
+        }
+
+        /**
+         * Count solutions up to a limit, leaving the board unchanged.
+         *
+         * @param limit stop counting once this many solutions are found
+         * @return number of solutions found
+         */
+        private int count(final int limit) {
+            nodes++;
+            int mark = top;
+            if (!propagate()) {
+                return 0;
+            }
+            if (best < 0) {
+                undo(mark);
+                return 1;
+            }
+            int x = best % 9;
+            int y = best / 9;
+
+            int possible = work.candidates(x, y);
+            int total = 0;
+            for (byte i = 1; i < 10 && total < limit; i++) {
+                if ((possible & (1 << i)) != 0) {
+                    work.set(x, y, i);
+                    total += count(limit - total);
+                }
+            }
+            work.unset(x, y);
+            undo(mark);
+            return total;
+        }
+
+        /**
+         * Fill in every empty cell that has exactly one candidate.
+         *
+         * Afterwards best holds the empty cell with the fewest
+         * candidates, or -1 if the board is full. On a contradiction
+         * the cells filled by this call are emptied again.
+         *
+         * @return false if some empty cell has no candidates
+         */
+        private boolean propagate() {
+            int mark = top;
+            boolean changed;
+            do {
+                changed = false;
+                best = -1;
+                int bestCount = 10;
+                for (int i = 0; i < 81; i++) {
+                    int x = i % 9;
+                    int y = i / 9;
+                    if (work.get(x, y) == 0) {
+                        int possible = work.candidates(x, y);
+                        int n = Integer.bitCount(possible);
+                        if (n == 0) {
+                            undo(mark);
+                            return false;
+                        } else if (n == 1) {
+                            int val = Integer.numberOfTrailingZeros(possible);
+                            work.set(x, y, (byte) val);
+                            trail[top++] = i;
+                            changed = true;
+                        } else if (n < bestCount) {
+                            best = i;
+                            bestCount = n;
+                        }
+                    }
+                }
+            } while (changed);
+            return true;
+        }
+
+        /**
+         * Empty the cells filled by propagation since a mark.
+         *
+         * @param mark trail size to return to
+         */
+        private void undo(final int mark) {
+            while (top > mark) {
+                int i = trail[--top];
+                work.unset(i % 9, i / 9);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.nullprogram.sudoku;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Generates many puzzles at once across a pool of worker threads.
+ *
+ * Every puzzle is generated from its own seed, split from the batch
+ * generator's seed by {@link Generator#split(long, long)}, so workers
+ * share no mutable state and throughput grows with the number of
+ * cores. A batch generator created with a given seed always produces
+ * the same puzzles, although they are delivered in the order they
+ * finish.
+ */
+public class BatchGenerator {
+
+    /* Tasks kept queued per worker, so workers never wait for work. */
+    private static final int IN_FLIGHT = 2;
+
+    private final ForkJoinPool pool;
+    private final Generator generator;
+    private final long seed;
+
+    /* Index of the next seed to split off. */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Create a batch generator using every available core.
+     */
+    public BatchGenerator() {
+        this(Runtime.getRuntime().availableProcessors(),
+             new Random().nextLong(), Generator.ATTEMPT_NODES);
+    }
+
+    /**
+     * Create a batch generator.
+     *
+     * @param parallelism number of worker threads
+     * @param batchSeed seed from which every puzzle's seed is split
+     * @param budget search nodes allowed for one attempt
+     */
+    public BatchGenerator(final int parallelism, final long batchSeed,
+                          final long budget) {
+        pool = new ForkJoinPool(parallelism);
+        /* Every puzzle's seed is passed in, so no source of seeds. */
+        generator = new Generator(null, budget);
+        seed = batchSeed;
+    }
+
+    /**
+     * Generate a number of puzzles.
+     *
+     * A few puzzles per worker are queued at a time, and another is
+     * queued as each is taken, so a large count holds no more than a
+     * few tasks and an abandoned stream stops the work soon after.
+     * The returned stream delivers puzzles in the order they finish.
+     *
+     * @param count number of puzzles to generate
+     * @param givensGoal number of givens each puzzle should have
+     * @return stream of exactly count puzzles
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Stream<Board> generate(final int count,
+                                        final int givensGoal) {
+        return generate(count, givensGoal, null);
+    }
+
+    /**
+     * Generate a number of puzzles, none equivalent to any other.
+     *
+     * Each finished puzzle is checked against the index, and a puzzle
+     * already there is dropped and replaced by a fresh one.
+     *
+     * @param count number of puzzles to generate
+     * @param givensGoal number of givens each puzzle should have
+     * @param index puzzles already seen, or null to keep everything
+     * @return stream of exactly count puzzles
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Stream<Board> generate(final int count,
+                                        final int givensGoal,
+                                        final PuzzleIndex index) {
+        Generator.checkGoal(givensGoal);
+        final CompletionService<Board> service =
+            new ExecutorCompletionService<Board>(pool);
+        final int ahead = Math.min(count,
+                                   IN_FLIGHT * pool.getParallelism());
+        for (int i = 0; i < ahead; i++) {
+            service.submit(new Task(nextSeed(), givensGoal));
+        }
+        Iterator<Board> results = new Iterator<Board>() {
+            private int remaining = count;
+            private int submitted = ahead;
+
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            public Board next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                try {
+                    Board puzzle = service.take().get();
+                    while (index != null && !index.add(puzzle)) {
+                        service.submit(new Task(nextSeed(), givensGoal));
+                        puzzle = service.take().get();
+                    }
+                    if (submitted < count) {
+                        submitted++;
+                        service.submit(new Task(nextSeed(), givensGoal));
+                    }
+                    return puzzle;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        };
+        int flags = Spliterator.NONNULL | Spliterator.IMMUTABLE;
+        return StreamSupport.stream(
+            Spliterators.spliterator(results, count, flags), false);
+    }
+
+    /**
+     * Split off the seed for the next puzzle.
+     *
+     * @return a fresh seed
+     */
+    private long nextSeed() {
+        return Generator.split(seed, next.getAndIncrement());
+    }
+
+    /**
+     * Stop the worker threads, abandoning any queued puzzles.
+     */
+    public final void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Generates one puzzle.
+     */
+    private final class Task implements Callable<Board> {
+
+        private final long puzzleSeed;
+        private final int givensGoal;
+
+        /**
+         * Create a new task.
+         *
+         * @param rngSeed seed for this puzzle's randomness
+         * @param goal number of givens the puzzle should have
+         */
+        private Task(final long rngSeed, final int goal) {
+            puzzleSeed = rngSeed;
+            givensGoal = goal;
+        }
+
+        /** {@inheritDoc} */
+        public Board call() {
+            return generator.generate(puzzleSeed, givensGoal);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Solves many boards at once by propagating constraints across up to
+ * 64 of them in each pass.
+ *
+ * The candidates are bit-sliced: for every cell and value there is one
+ * long whose bit i says whether the value is still possible in that
+ * cell of board i, its lane. One bitwise operation then makes the same
+ * deduction in all 64 boards, so naked and hidden singles are found
+ * for a whole group with no per-board branching. Most puzzles fall to
+ * singles alone. A board that propagation cannot finish is handed,
+ * with everything propagation filled in, to a fallback solver that
+ * branches for that lane only.
+ *
+ * Cells are indexed 0 through 80 in row order. A batch solver keeps
+ * its candidate words between calls, so each thread should use its
+ * own instance.
+ */
+public class BatchSolver {
+
+    /** Number of boards propagated together in one pass. */
+    public static final int LANES = 64;
+
+    /* Row, column and box of each flat cell index. */
+    private static final int[] ROW = new int[81];
+    private static final int[] COL = new int[81];
+    private static final int[] BOX = new int[81];
+
+    /* Cells of each row (0-8), column (9-17) and box (18-26). */
+    private static final int[][] UNITS = new int[27][9];
+
+    /* The 20 other cells sharing a unit with each cell. */
+    private static final int[][] PEERS = new int[81][20];
+
+    static {
+        for (int i = 0; i < 81; i++) {
+            ROW[i] = i / 9;
+            COL[i] = i % 9;
+            BOX[i] = (ROW[i] / 3) * 3 + COL[i] / 3;
+        }
+        int[] sizes = new int[27];
+        for (int i = 0; i < 81; i++) {
+            UNITS[ROW[i]][sizes[ROW[i]]++] = i;
+            UNITS[9 + COL[i]][sizes[9 + COL[i]]++] = i;
+            UNITS[18 + BOX[i]][sizes[18 + BOX[i]]++] = i;
+        }
+        for (int i = 0; i < 81; i++) {
+            int n = 0;
+            for (int j = 0; j < 81; j++) {
+                if (j != i && (ROW[i] == ROW[j] || COL[i] == COL[j]
+                               || BOX[i] == BOX[j])) {
+                    PEERS[i][n++] = j;
+                }
+            }
+        }
+    }
+
+    private final Solver fallback;
+
+    /* Lanes where value v + 1 is possible in cell i, at i * 9 + v. */
+    private final long[] cands = new long[81 * 9];
+
+    /* Lanes where each cell's single candidate has been placed. */
+    private final long[] placed = new long[81];
+
+    /* Lanes in use, and lanes found to have no solution. */
+    private long active;
+    private long dead;
+
+    /* Scratch board for lanes that need the fallback. */
+    private final Board lane = new Board();
+
+    private long propagated;
+
+    /**
+     * Create a batch solver that falls back on Dancing Links.
+     */
+    public BatchSolver() {
+        this(new DancingLinksSolver());
+    }
+
+    /**
+     * Create a batch solver.
+     *
+     * @param fallback solver for boards that propagation cannot finish
+     */
+    public BatchSolver(final Solver fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Solve every board in place.
+     *
+     * As with {@link Solver#solve(Board)}, a board with no solution is
+     * left unchanged.
+     *
+     * @param boards the boards to solve
+     * @return number of boards solved
+     */
+    public final int solve(final Board[] boards) {
+        int solved = 0;
+        for (int i = 0; i < boards.length; i += LANES) {
+            solved += solve(boards, i, Math.min(LANES, boards.length - i));
+        }
+        return solved;
+    }
+
+    /**
+     * The number of boards solved by propagation alone so far.
+     *
+     * @return boards that did not need the fallback
+     */
+    public final long getPropagated() {
+        return propagated;
+    }
+
+    /**
+     * Solve one group of boards, one per lane.
+     *
+     * @param boards the boards to solve
+     * @param from index of the group's first board
+     * @param count number of boards in the group, at most LANES
+     * @return number of boards solved
+     */
+    private int solve(final Board[] boards, final int from, final int count) {
+        load(boards, from, count);
+        boolean changed;
+        do {
+            changed = nakedSingles();
+            changed |= hiddenSingles();
+        } while (changed && (active & ~dead & ~complete()) != 0);
+
+        long done = active & ~dead & complete();
+        propagated += Long.bitCount(done);
+        store(boards, from, done);
+        int solved = Long.bitCount(done);
+        long rest = active & ~dead & ~done;
+        while (rest != 0) {
+            int i = Long.numberOfTrailingZeros(rest);
+            rest &= rest - 1;
+            extract(i);
+            if (fallback.solve(lane)) {
+                boards[from + i].copyFrom(lane);
+                solved++;
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Slice a group of boards into the candidate words.
+     *
+     * @param boards the boards to solve
+     * @param from index of the group's first board
+     * @param count number of boards in the group
+     */
+    private void load(final Board[] boards, final int from, final int count) {
+        active = count == LANES ? -1L : (1L << count) - 1;
+        dead = 0;
+        for (int i = 0; i < 81; i++) {
+            placed[i] = 0;
+            for (int v = 0; v < 9; v++) {
+                cands[i * 9 + v] = active;
+            }
+        }
+        for (int b = 0; b < count; b++) {
+            Board board = boards[from + b];
+            long bit = 1L << b;
+            for (int i = 0; i < 81; i++) {
+                int val = board.get(COL[i], ROW[i]);
+                if (val > 0) {
+                    for (int v = 0; v < 9; v++) {
+                        if (v != val - 1) {
+                            cands[i * 9 + v] &= ~bit;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Place every cell left with one candidate, removing its value
+     * from the cell's peers, and mark lanes with an empty cell dead.
+     *
+     * @return true if any candidate was removed
+     */
+    private boolean nakedSingles() {
+        boolean changed = false;
+        for (int i = 0; i < 81; i++) {
+            if ((active & ~placed[i]) == 0) {
+                continue;
+            }
+            long one = 0;
+            long two = 0;
+            for (int v = 0; v < 9; v++) {
+                long c = cands[i * 9 + v];
+                two |= one & c;
+                one |= c;
+            }
+            dead |= active & ~one;
+            long single = one & ~two & ~placed[i];
+            if (single == 0) {
+                continue;
+            }
+            placed[i] |= single;
+            for (int v = 0; v < 9; v++) {
+                long hit = single & cands[i * 9 + v];
+                if (hit != 0) {
+                    for (int p : PEERS[i]) {
+                        long c = cands[p * 9 + v];
+                        if ((c & hit) != 0) {
+                            cands[p * 9 + v] = c & ~hit;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Reduce every cell that is the only place for a value in some
+     * unit to that value, and mark lanes where a value has no place
+     * in a unit dead.
+     *
+     * @return true if any candidate was removed
+     */
+    private boolean hiddenSingles() {
+        boolean changed = false;
+        for (int[] unit : UNITS) {
+            for (int v = 0; v < 9; v++) {
+                long one = 0;
+                long two = 0;
+                long done = 0;
+                for (int i : unit) {
+                    long c = cands[i * 9 + v];
+                    two |= one & c;
+                    one |= c;
+                    done |= c & placed[i];
+                }
+                dead |= active & ~one;
+                long only = one & ~two & ~done;
+                if (only == 0) {
+                    continue;
+                }
+                for (int i : unit) {
+                    long hit = only & cands[i * 9 + v];
+                    if (hit == 0) {
+                        continue;
+                    }
+                    for (int w = 0; w < 9; w++) {
+                        long c = cands[i * 9 + w];
+                        if (w != v && (c & hit) != 0) {
+                            cands[i * 9 + w] = c & ~hit;
+                            changed = true;
+                        }
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Find the lanes where every cell has been placed.
+     *
+     * @return lanes that are solved, unless dead
+     */
+    private long complete() {
+        long all = -1L;
+        for (int i = 0; i < 81; i++) {
+            all &= placed[i];
+        }
+        return all;
+    }
+
+    /**
+     * Write the solutions of some lanes back to their boards.
+     *
+     * @param boards the boards being solved
+     * @param from index of the group's first board
+     * @param lanes the solved lanes
+     */
+    private void store(final Board[] boards, final int from,
+                       final long lanes) {
+        for (int i = 0; i < 81; i++) {
+            for (int v = 0; v < 9; v++) {
+                long bits = cands[i * 9 + v] & lanes;
+                while (bits != 0) {
+                    int b = Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    boards[from + b].set(COL[i], ROW[i], (byte) (v + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy one lane's propagated puzzle into the scratch board,
+     * filling in each cell that has a single candidate left.
+     *
+     * @param b the lane
+     */
+    private void extract(final int b) {
+        lane.clear();
+        for (int i = 0; i < 81; i++) {
+            int val = 0;
+            int n = 0;
+            for (int v = 0; v < 9; v++) {
+                if ((cands[i * 9 + v] >>> b & 1) != 0) {
+                    val = v + 1;
+                    n++;
+                }
+            }
+            if (n == 1) {
+                lane.set(COL[i], ROW[i], (byte) val);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.nullprogram.sudoku;
+
+/**
+ * A 9x9 Sudoku grid that tracks which values are used in each row,
+ * column and box.
+ *
+ * The occupancy masks are updated as values are set and unset, so
+ * finding the candidates for a cell is a few bit operations rather
+ * than a scan of its 20 peers. Bit <i>n</i> of a mask stands for the
+ * value <i>n</i>, so only bits 1 through 9 are ever used. The masks
+ * are only meaningful while the grid has no conflicting values, which
+ * is always the case during solving and generation.
+ */
+public class Board {
+
+    /** Mask with every value (1 through 9) set. */
+    public static final int ALL = 0x3FE;
+
+    private final byte[][] cells = new byte[9][9];
+    private final int[] rows = new int[9];
+    private final int[] cols = new int[9];
+    private final int[] boxes = new int[9];
+    private int filled;
+
+    /* Solution kept with a generated puzzle, dropped on replacement. */
+    private Board solution;
+
+    /**
+     * Create a new empty board.
+     */
+    public Board() {
+    }
+
+    /**
+     * Create a new board holding the values of a grid.
+     *
+     * @param grid the values to copy, indexed [x][y]
+     */
+    public Board(final byte[][] grid) {
+        copyFrom(grid);
+    }
+
+    /**
+     * Create a new board holding the values of another board.
+     *
+     * @param board the board to copy
+     */
+    public Board(final Board board) {
+        copyFrom(board);
+    }
+
+    /**
+     * Get the value at a cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return the value, or 0 if empty
+     */
+    public final byte get(final int x, final int y) {
+        return cells[x][y];
+    }
+
+    /**
+     * Set the value at a cell, replacing any existing value.
+     *
+     * @param x x position
+     * @param y y position
+     * @param val the new value, or 0 to empty the cell
+     */
+    public final void set(final int x, final int y, final byte val) {
+        unset(x, y);
+        if (val > 0) {
+            int bit = 1 << val;
+            cells[x][y] = val;
+            rows[y] |= bit;
+            cols[x] |= bit;
+            boxes[box(x, y)] |= bit;
+            filled++;
+        }
+    }
+
+    /**
+     * Reset a cell to empty.
+     *
+     * @param x x position
+     * @param y y position
+     */
+    public final void unset(final int x, final int y) {
+        byte val = cells[x][y];
+        if (val > 0) {
+            int bit = ~(1 << val);
+            cells[x][y] = 0;
+            rows[y] &= bit;
+            cols[x] &= bit;
+            boxes[box(x, y)] &= bit;
+            filled--;
+        }
+    }
+
+    /**
+     * Candidate values for an empty cell as a mask.
+     *
+     * @param x x position
+     * @param y y position
+     * @return mask of values not used by the cell's row, column or box
+     */
+    public final int candidates(final int x, final int y) {
+        return ALL & ~(rows[y] | cols[x] | boxes[box(x, y)]);
+    }
+
+    /**
+     * The number of candidate values for an empty cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return number of candidates
+     */
+    public final int numCandidates(final int x, final int y) {
+        return Integer.bitCount(candidates(x, y));
+    }
+
+    /**
+     * Return the number of filled cells.
+     *
+     * @return number of filled cells
+     */
+    public final int filled() {
+        return filled;
+    }
+
+    /**
+     * Empty every cell, forgetting any known solution.
+     */
+    public final void clear() {
+        solution = null;
+        for (int i = 0; i < 9; i++) {
+            for (int j = 0; j < 9; j++) {
+                cells[i][j] = 0;
+            }
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        filled = 0;
+    }
+
+    /**
+     * Replace this board's values with those of a grid.
+     *
+     * @param grid the values to copy, indexed [x][y]
+     */
+    public final void copyFrom(final byte[][] grid) {
+        clear();
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                set(x, y, grid[x][y]);
+            }
+        }
+    }
+
+    /**
+     * Replace this board's values with those of another board,
+     * forgetting any known solution.
+     *
+     * @param board the board to copy
+     */
+    public final void copyFrom(final Board board) {
+        solution = null;
+        for (int i = 0; i < 9; i++) {
+            System.arraycopy(board.cells[i], 0, cells[i], 0, 9);
+        }
+        System.arraycopy(board.rows, 0, rows, 0, 9);
+        System.arraycopy(board.cols, 0, cols, 0, 9);
+        System.arraycopy(board.boxes, 0, boxes, 0, 9);
+        filled = board.filled;
+    }
+
+    /**
+     * Copy this board's values into a grid.
+     *
+     * @param grid destination grid, indexed [x][y]
+     */
+    public final void copyTo(final byte[][] grid) {
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                grid[x][y] = cells[x][y];
+            }
+        }
+    }
+
+    /**
+     * The solution of this puzzle, if it is known.
+     *
+     * A {@link Generator} already knows the solution of each puzzle it
+     * returns, so it is kept with the puzzle and hints can look it up
+     * rather than solve again. Copies of a board do not carry it, and
+     * clearing or replacing the board's values forgets it. Setting and
+     * unsetting single cells keeps it, so an entry that disagrees with
+     * it is the caller's to check.
+     *
+     * @return the solution, or null if not known
+     */
+    public final Board getSolution() {
+        return solution;
+    }
+
+    /**
+     * Keep the solution with this puzzle.
+     *
+     * @param solved the solution
+     */
+    final void setSolution(final Board solved) {
+        solution = solved;
+    }
+
+    /**
+     * Parse a board from the common 81-character format.
+     *
+     * Cells are listed row by row. The digits 1 through 9 are values
+     * and '0' or '.' marks an empty cell.
+     *
+     * @param text the board as text
+     * @return the parsed board
+     * @throws IllegalArgumentException if the text is not a board
+     */
+    public static Board parse(final CharSequence text) {
+        if (text.length() != 81) {
+            throw new IllegalArgumentException("Board must be 81 cells.");
+        }
+        Board board = new Board();
+        for (int i = 0; i < 81; i++) {
+            char c = text.charAt(i);
+            if (c >= '1' && c <= '9') {
+                board.set(i % 9, i / 9, (byte) (c - '0'));
+            } else if (c != '0' && c != '.') {
+                throw new IllegalArgumentException("Bad cell: " + c);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * The board in the 81-character format, with '.' for empty cells.
+     *
+     * @return the board as text
+     */
+    public final String toString() {
+        StringBuilder sb = new StringBuilder(81);
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                byte val = cells[x][y];
+                sb.append(val > 0 ? (char) ('0' + val) : '.');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The index of the box containing a cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return box index, 0 through 8
+     */
+    private static int box(final int x, final int y) {
+        return (y / 3) * 3 + x / 3;
+    }
+}
@@ -0,0 +1,275 @@
+package com.nullprogram.sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command line tool that solves a stream of puzzles without a display.
+ *
+ * Puzzles are read one per line in the 81-character format, from a
+ * file or standard input. Blank lines and lines starting with '#' are
+ * skipped, and anything after the first space, tab or comma of a line
+ * is ignored. For each puzzle one line is written to standard output:
+ *
+ * <pre>
+ * puzzle solution count grade
+ * </pre>
+ *
+ * The solution count stops at 2 and the grade is from a {@link Rater}.
+ * When there is no solution, the solution and grade are written as
+ * '-', and a line that is not a puzzle is echoed with "invalid".
+ * Lines are solved in batches by a pool of workers, and only a few
+ * batches are held in memory at once.
+ * The throughput is reported on standard error at the end.
+ */
+public final class BulkSolver {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Solver solver;
+    private final int threads;
+    private final boolean ordered;
+
+    /**
+     * Create a bulk solver.
+     *
+     * @param solver solver used to find solutions and count them
+     * @param threads number of worker threads
+     * @param ordered true to write results in input order
+     */
+    public BulkSolver(final Solver solver, final int threads,
+                      final boolean ordered) {
+        this.solver = solver;
+        this.threads = threads;
+        this.ordered = ordered;
+    }
+
+    /**
+     * The command line entry point.
+     *
+     * @param args command line arguments
+     * @throws IOException if reading or writing fails
+     * @throws InterruptedException if interrupted while waiting on work
+     */
+    public static void main(final String[] args)
+        throws IOException, InterruptedException {
+        Metrics.global().register(Metrics.NAME);
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean ordered = true;
+        Solver solver = new DancingLinksSolver();
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-t") && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    usage();
+                    return;
+                }
+            } else if (arg.equals("-u")) {
+                ordered = false;
+            } else if (arg.equals("-b")) {
+                solver = new BacktrackSolver();
+            } else if (arg.startsWith("-") && !arg.equals("-")) {
+                usage();
+                return;
+            } else {
+                file = arg;
+            }
+        }
+
+        BufferedReader in;
+        if (file == null || file.equals("-")) {
+            in = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.US_ASCII),
+                BUFFER_SIZE);
+        } else {
+            in = Files.newBufferedReader(Paths.get(file),
+                                         StandardCharsets.US_ASCII);
+        }
+        Writer out = new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.US_ASCII),
+            BUFFER_SIZE);
+        long start = System.nanoTime();
+        long count = new BulkSolver(solver, threads, ordered).run(in, out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        in.close();
+        out.flush();
+        System.err.printf("%d puzzles in %.3f s (%.1f puzzles/s)%n",
+                          count, seconds, count / seconds);
+    }
+
+    /**
+     * Print the command line usage.
+     */
+    private static void usage() {
+        System.err.println("usage: BulkSolver [-t threads] [-u] [-b] [file]");
+        System.err.println("  -t n  number of worker threads");
+        System.err.println("  -u    write results as they finish, unordered");
+        System.err.println("  -b    use the backtracking solver");
+    }
+
+    /**
+     * Solve every puzzle from a reader, writing the results.
+     *
+     * @param in source of puzzles, one per line
+     * @param out destination for results
+     * @return number of puzzles read
+     * @throws IOException if reading or writing fails
+     * @throws InterruptedException if interrupted while waiting on work
+     */
+    public long run(final BufferedReader in, final Writer out)
+        throws IOException, InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        /* Only unordered results are taken as they finish, and every
+         * batch submitted to the service must be taken from it, or its
+         * completion queue would hold on to every result. */
+        CompletionService<String> service = ordered ? null
+            : new ExecutorCompletionService<String>(pool);
+        Queue<Future<String>> pending = new LinkedList<Future<String>>();
+        int maxPending = threads * 2;
+        long count = 0;
+        try {
+            List<String> batch = new ArrayList<String>(BATCH_SIZE);
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                batch.add(line);
+                count++;
+                if (batch.size() == BATCH_SIZE) {
+                    pending.add(submit(pool, service, batch));
+                    batch = new ArrayList<String>(BATCH_SIZE);
+                    if (pending.size() >= maxPending) {
+                        write(service, pending, out);
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                pending.add(submit(pool, service, batch));
+            }
+            while (!pending.isEmpty()) {
+                write(service, pending, out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return count;
+    }
+
+    /**
+     * Start solving a batch.
+     *
+     * @param pool the worker pool
+     * @param service completion service when unordered, else null
+     * @param batch the lines to solve
+     * @return the batch's future result
+     */
+    private Future<String> submit(final ExecutorService pool,
+                                  final CompletionService<String> service,
+                                  final List<String> batch) {
+        if (service == null) {
+            return pool.submit(new Batch(batch));
+        } else {
+            return service.submit(new Batch(batch));
+        }
+    }
+
+    /**
+     * Wait for one batch to finish and write its results.
+     *
+     * When ordered, this is the oldest batch, otherwise it is whichever
+     * batch finishes first.
+     *
+     * @param service the service the batches were submitted to, or
+     *        null when ordered
+     * @param pending batches not yet written, oldest first
+     * @param out destination for results
+     * @throws IOException if writing fails
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void write(final CompletionService<String> service,
+                       final Queue<Future<String>> pending, final Writer out)
+        throws IOException, InterruptedException {
+        Future<String> done;
+        if (ordered) {
+            done = pending.remove();
+        } else {
+            done = service.take();
+            pending.remove(done);
+        }
+        try {
+            out.write(done.get());
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Solves a batch of lines.
+     */
+    private final class Batch implements Callable<String> {
+
+        private final List<String> lines;
+
+        /**
+         * Create a new batch.
+         *
+         * @param lines the input lines
+         */
+        private Batch(final List<String> lines) {
+            this.lines = lines;
+        }
+
+        /** {@inheritDoc} */
+        public String call() {
+            Rater rater = new Rater();
+            StringBuilder sb = new StringBuilder(lines.size() * 200);
+            for (String line : lines) {
+                String text = line.split("[\\s,]", 2)[0];
+                Board puzzle;
+                try {
+                    puzzle = Board.parse(text);
+                } catch (IllegalArgumentException e) {
+                    sb.append(line).append(" invalid\n");
+                    continue;
+                }
+                sb.append(text).append(' ');
+                Board work = new Board(puzzle);
+                if (solver.solve(work)) {
+                    sb.append(work).append(' ');
+                    sb.append(solver.countSolutions(puzzle, 2)).append(' ');
+                    sb.append(rater.grade(puzzle)).append('\n');
+                } else {
+                    sb.append("- 0 -\n");
+                }
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.nullprogram.sudoku;
+
+/**
+ * A request, shared between threads, for long running work to stop.
+ *
+ * Work is stopped either explicitly with {@link #cancel()} or by a
+ * deadline passing. Searches poll this only every few thousand nodes,
+ * so checking it costs next to nothing.
+ */
+public class Cancellation {
+
+    /** A cancellation that never happens. */
+    public static final Cancellation NONE = new Cancellation();
+
+    private final long deadline;
+    private final boolean timed;
+    private volatile boolean cancelled;
+
+    /**
+     * Create a cancellation without a deadline.
+     */
+    public Cancellation() {
+        deadline = 0;
+        timed = false;
+    }
+
+    /**
+     * Create a cancellation with a deadline.
+     *
+     * @param nanoTime deadline in {@link System#nanoTime()} terms
+     */
+    private Cancellation(final long nanoTime) {
+        deadline = nanoTime;
+        timed = true;
+    }
+
+    /**
+     * Create a cancellation that happens after some time.
+     *
+     * @param millis milliseconds from now
+     * @return the new cancellation
+     */
+    public static Cancellation after(final long millis) {
+        return new Cancellation(System.nanoTime() + millis * 1000000L);
+    }
+
+    /**
+     * Request that the work stop.
+     */
+    public final void cancel() {
+        if (this != NONE) {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Determine if the work should stop.
+     *
+     * @return true if cancelled or past the deadline
+     */
+    public final boolean isCancelled() {
+        return cancelled || (timed && System.nanoTime() - deadline > 0);
+    }
+}
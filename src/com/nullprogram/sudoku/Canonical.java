@@ -0,0 +1,330 @@
+package com.nullprogram.sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Computes a canonical form of a puzzle, identical for every puzzle
+ * that is the same up to Sudoku's symmetries.
+ *
+ * The symmetries are transposing, reordering bands and the rows within
+ * each band, reordering stacks and the columns within each stack, and
+ * relabeling digits. The canonical form is the variant that is
+ * lexicographically smallest when read row by row, with empty cells
+ * as 0 and digits relabeled in order of first appearance.
+ *
+ * The search fixes one row at a time. Every combination of transpose
+ * and column order starts out as a candidate, and after each row only
+ * the candidates that produced the smallest row so far survive, so
+ * very few of the 3 million geometric variants are ever examined in
+ * full.
+ */
+public final class Canonical {
+
+    /* Every stack-preserving column order, as result col -> source col. */
+    private static final int[][] COLUMN_ORDERS = columnOrders();
+
+    /**
+     * Hidden constructor.
+     */
+    private Canonical() {
+    }
+
+    /**
+     * Compute the canonical form of a puzzle.
+     *
+     * @param puzzle the puzzle
+     * @return canonical form, 81 values row by row with 0 for empty
+     */
+    public static byte[] form(final Board puzzle) {
+        byte[][][] grids = new byte[2][9][9];
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                byte val = puzzle.get(x, y);
+                grids[0][y][x] = val;
+                grids[1][x][y] = val;
+            }
+        }
+
+        byte[] result = new byte[81];
+        Candidates list = firstRow(grids, result);
+        Candidates next = new Candidates(list.size);
+        byte[] best = new byte[9];
+        byte[] row = new byte[9];
+        for (int r = 1; r < 9; r++) {
+            next.size = 0;
+            boolean first = true;
+            for (int n = 0; n < list.size; n++) {
+                int used = list.used[n];
+                int[] cols = COLUMN_ORDERS[list.cols[n]];
+                byte[][] grid = grids[list.transpose[n]];
+                for (int src = 0; src < 9; src++) {
+                    if (!allows(used, r, src)) {
+                        continue;
+                    }
+                    long labels = list.labels[n];
+                    int label = list.last[n];
+                    int cmp = first ? -1 : 0;
+                    byte[] source = grid[src];
+                    for (int j = 0; j < 9 && cmp <= 0; j++) {
+                        int val = source[cols[j]];
+                        if (val > 0) {
+                            int shift = val * 4;
+                            if (((labels >>> shift) & 0xF) == 0) {
+                                labels |= (long) ++label << shift;
+                            }
+                            val = (int) (labels >>> shift) & 0xF;
+                        }
+                        row[j] = (byte) val;
+                        if (cmp == 0 && val != best[j]) {
+                            cmp = val < best[j] ? -1 : 1;
+                        }
+                    }
+                    if (cmp < 0) {
+                        next.size = 0;
+                        System.arraycopy(row, 0, best, 0, 9);
+                        first = false;
+                    }
+                    if (cmp <= 0) {
+                        next.add(list.transpose[n], list.cols[n],
+                                 used | (1 << src), labels, label);
+                    }
+                }
+            }
+            System.arraycopy(best, 0, result, r * 9, 9);
+            Candidates tmp = list;
+            list = next;
+            next = tmp;
+        }
+        return result;
+    }
+
+    /**
+     * Find the candidates for the first row.
+     *
+     * The values of a row are distinct, so after relabeling the first
+     * row only depends on which of its cells are empty. Empty cells
+     * read as 0, so the smallest first row is the one with its empty
+     * cells pushed furthest left, both within each stack and by
+     * putting the stacks with the fewest givens first. Only the column
+     * orders that achieve it need to be kept.
+     *
+     * @param grids the grid and its transpose, indexed [y][x]
+     * @param result where the first row of the canonical form is written
+     * @return the candidates with the first row fixed
+     */
+    private static Candidates firstRow(final byte[][][] grids,
+                                       final byte[] result) {
+        int[][] masks = new int[2][9];
+        int best = Integer.MAX_VALUE;
+        for (int t = 0; t < 2; t++) {
+            for (int src = 0; src < 9; src++) {
+                int mask = 0;
+                for (int x = 0; x < 9; x++) {
+                    if (grids[t][src][x] > 0) {
+                        mask |= 1 << x;
+                    }
+                }
+                masks[t][src] = mask;
+                int[] blocks = new int[3];
+                for (int k = 0; k < 3; k++) {
+                    int stack = mask & (7 << k * 3);
+                    blocks[k] = (1 << Integer.bitCount(stack)) - 1;
+                }
+                Arrays.sort(blocks);
+                best = Math.min(best,
+                                blocks[0] << 6 | blocks[1] << 3 | blocks[2]);
+            }
+        }
+
+        Candidates list = new Candidates(64);
+        for (int t = 0; t < 2; t++) {
+            for (int src = 0; src < 9; src++) {
+                int mask = masks[t][src];
+                for (int c = 0; c < COLUMN_ORDERS.length; c++) {
+                    int[] cols = COLUMN_ORDERS[c];
+                    int pattern = 0;
+                    for (int j = 0; j < 9; j++) {
+                        pattern = pattern << 1 | (mask >>> cols[j] & 1);
+                    }
+                    if (pattern != best) {
+                        continue;
+                    }
+                    long labels = 0;
+                    int label = 0;
+                    for (int j = 0; j < 9; j++) {
+                        int val = grids[t][src][cols[j]];
+                        if (val > 0) {
+                            labels |= (long) ++label << (val * 4);
+                        }
+                    }
+                    list.add(t, c, 1 << src, labels, label);
+                }
+            }
+        }
+        int label = 0;
+        for (int j = 0; j < 9; j++) {
+            result[j] = (byte) ((best >>> (8 - j) & 1) == 0 ? 0 : ++label);
+        }
+        return list;
+    }
+
+    /**
+     * Determine if a source row may be placed at a result row.
+     *
+     * The first row of each result band may come from any unused band,
+     * and the rest must come from the same band as the row before.
+     *
+     * @param used mask of source rows already placed
+     * @param r the result row
+     * @param src the source row
+     * @return true if allowed
+     */
+    private static boolean allows(final int used, final int r,
+                                  final int src) {
+        if ((used & (1 << src)) != 0) {
+            return false;
+        }
+        int band = 7 << (src / 3 * 3);
+        if (r % 3 == 0) {
+            return (used & band) == 0;
+        } else {
+            return (used & band) != 0;
+        }
+    }
+
+    /**
+     * Compute the canonical form of a puzzle as a board.
+     *
+     * @param puzzle the puzzle
+     * @return the canonical variant of the puzzle
+     */
+    public static Board canonical(final Board puzzle) {
+        byte[] form = form(puzzle);
+        Board board = new Board();
+        for (int i = 0; i < 81; i++) {
+            board.set(i % 9, i / 9, form[i]);
+        }
+        return board;
+    }
+
+    /**
+     * A 64-bit hash of a puzzle's canonical form.
+     *
+     * Equivalent puzzles always have the same key. Different puzzles
+     * collide only with the odds of a good 64-bit hash.
+     *
+     * @param puzzle the puzzle
+     * @return hash of the canonical form
+     */
+    public static long key(final Board puzzle) {
+        byte[] form = form(puzzle);
+        long h = 0x9E3779B97F4A7C15L;
+        long word = 0;
+        for (int i = 0; i < 81; i++) {
+            word = word * 10 + form[i];
+            if (i % 18 == 17 || i == 80) {
+                h = mix(h ^ mix(word));
+                word = 0;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Scramble the bits of a word (the MurmurHash3 finalizer).
+     *
+     * @param z word to mix
+     * @return mixed word
+     */
+    private static long mix(final long z) {
+        long h = z;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * List every column order that keeps stacks together.
+     *
+     * @return each order as a map from result column to source column
+     */
+    private static int[][] columnOrders() {
+        int[][] perms = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0},
+        };
+        int[][] orders = new int[6 * 6 * 6 * 6][];
+        int n = 0;
+        for (int[] stacks : perms) {
+            for (int[] a : perms) {
+                for (int[] b : perms) {
+                    for (int[] c : perms) {
+                        int[][] within = {a, b, c};
+                        int[] order = new int[9];
+                        for (int j = 0; j < 9; j++) {
+                            order[j] = stacks[j / 3] * 3 + within[j / 3][j % 3];
+                        }
+                        orders[n++] = order;
+                    }
+                }
+            }
+        }
+        return orders;
+    }
+
+    /**
+     * Partially fixed variants still in the running.
+     *
+     * Each candidate is a transpose choice, a column order, the mask of
+     * source rows placed so far and the digit labels handed out so far,
+     * packed four bits per digit.
+     */
+    private static final class Candidates {
+
+        private int[] transpose;
+        private int[] cols;
+        private int[] used;
+        private long[] labels;
+        private int[] last;
+        private int size;
+
+        /**
+         * Create an empty list.
+         *
+         * @param capacity initial capacity
+         */
+        private Candidates(final int capacity) {
+            transpose = new int[capacity];
+            cols = new int[capacity];
+            used = new int[capacity];
+            labels = new long[capacity];
+            last = new int[capacity];
+        }
+
+        /**
+         * Append a candidate.
+         *
+         * @param t transpose choice
+         * @param c column order index
+         * @param rows mask of source rows placed
+         * @param digits packed digit labels
+         * @param label last label handed out
+         */
+        private void add(final int t, final int c, final int rows,
+                         final long digits, final int label) {
+            if (size == transpose.length) {
+                int capacity = size * 2;
+                transpose = Arrays.copyOf(transpose, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                used = Arrays.copyOf(used, capacity);
+                labels = Arrays.copyOf(labels, capacity);
+                last = Arrays.copyOf(last, capacity);
+            }
+            transpose[size] = t;
+            cols[size] = c;
+            used[size] = rows;
+            labels[size] = digits;
+            last[size] = label;
+            size++;
+        }
+    }
+}
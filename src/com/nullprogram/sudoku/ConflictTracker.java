@@ -0,0 +1,250 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Tracks which values on a board conflict as the player fills it in.
+ *
+ * Unlike {@link Board}, this allows conflicting values. It keeps a
+ * count of each value in every row, column and box, so a value is
+ * valid exactly when each of its three counts is one. Setting a cell
+ * only revisits the cell and its 20 peers, and nothing is allocated,
+ * so a move costs the same however full the board is. The cells a
+ * move rechecked are reported, so a view need only redraw those. A
+ * tracker is not safe to share between threads.
+ */
+public class ConflictTracker {
+
+    /* The 20 cells sharing a row, column or box with each cell. */
+    private static final int[][] PEERS = new int[81][20];
+
+    static {
+        for (int i = 0; i < 81; i++) {
+            int n = 0;
+            for (int j = 0; j < 81; j++) {
+                if (i != j && (row(i) == row(j) || col(i) == col(j)
+                               || box(i) == box(j))) {
+                    PEERS[i][n++] = j;
+                }
+            }
+        }
+    }
+
+    private final byte[] cells = new byte[81];
+    private final boolean[] valid = new boolean[81];
+
+    /* Count of each value, indexed unit * 10 + value. */
+    private final int[] rows = new int[90];
+    private final int[] cols = new int[90];
+    private final int[] boxes = new int[90];
+
+    private int filled;
+    private int invalid;
+
+    /* Flat indexes of the cells rechecked by the last set. */
+    private final int[] rechecked = new int[21];
+    private int rechecks;
+
+    /**
+     * Create a tracker for an empty board.
+     */
+    public ConflictTracker() {
+        clear();
+    }
+
+    /**
+     * Empty every cell.
+     */
+    public final void clear() {
+        for (int i = 0; i < 81; i++) {
+            cells[i] = 0;
+            valid[i] = true;
+        }
+        for (int i = 0; i < 90; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        filled = 0;
+        invalid = 0;
+    }
+
+    /**
+     * Replace every cell with the values of a grid.
+     *
+     * @param grid the values to copy, indexed [x][y]
+     */
+    public final void copyFrom(final byte[][] grid) {
+        clear();
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                set(x, y, grid[x][y]);
+            }
+        }
+    }
+
+    /**
+     * Get the value at a cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return the value, or 0 if empty
+     */
+    public final byte get(final int x, final int y) {
+        return cells[y * 9 + x];
+    }
+
+    /**
+     * Set the value at a cell, replacing any existing value.
+     *
+     * @param x x position
+     * @param y y position
+     * @param val the new value, or 0 to empty the cell
+     * @return number of cells rechecked, the changed cell first
+     * @see #getRechecked(int)
+     */
+    public final int set(final int x, final int y, final byte val) {
+        int i = y * 9 + x;
+        byte old = cells[i];
+        rechecks = 0;
+        if (old == val) {
+            return 0;
+        }
+        forget(i, old, val);
+        if (old > 0) {
+            rows[row(i) * 10 + old]--;
+            cols[col(i) * 10 + old]--;
+            boxes[box(i) * 10 + old]--;
+            filled--;
+        }
+        cells[i] = val;
+        if (val > 0) {
+            rows[row(i) * 10 + val]++;
+            cols[col(i) * 10 + val]++;
+            boxes[box(i) * 10 + val]++;
+            filled++;
+        }
+        recheck(i, old, val);
+        return rechecks;
+    }
+
+    /**
+     * Get a cell rechecked by the last {@link #set(int, int, byte)},
+     * whose validity may have changed.
+     *
+     * @param k which rechecked cell, below the count set returned
+     * @return the cell's flat index, y * 9 + x
+     */
+    public final int getRechecked(final int k) {
+        return rechecked[k];
+    }
+
+    /**
+     * Determine if a cell's value conflicts with none of its peers.
+     *
+     * @param x x position
+     * @param y y position
+     * @return true if the cell is empty or its value is unique
+     */
+    public final boolean isValid(final int x, final int y) {
+        return valid[y * 9 + x];
+    }
+
+    /**
+     * The number of filled cells whose value conflicts with a peer.
+     *
+     * @return number of invalid cells
+     */
+    public final int conflicts() {
+        return invalid;
+    }
+
+    /**
+     * Determine if the board is full with no conflicts.
+     *
+     * @return true if the board is solved
+     */
+    public final boolean isComplete() {
+        return filled == 81 && invalid == 0;
+    }
+
+    /**
+     * Drop a cell and its affected peers from the invalid count.
+     *
+     * @param i the changing cell
+     * @param a the cell's old value
+     * @param b the cell's new value
+     */
+    private void forget(final int i, final int a, final int b) {
+        if (!valid[i]) {
+            invalid--;
+        }
+        for (int p : PEERS[i]) {
+            int v = cells[p];
+            if (v > 0 && (v == a || v == b) && !valid[p]) {
+                invalid--;
+            }
+        }
+    }
+
+    /**
+     * Recompute validity of a cell and its affected peers.
+     *
+     * @param i the changed cell
+     * @param a the cell's old value
+     * @param b the cell's new value
+     */
+    private void recheck(final int i, final int a, final int b) {
+        check(i);
+        for (int p : PEERS[i]) {
+            int v = cells[p];
+            if (v > 0 && (v == a || v == b)) {
+                check(p);
+            }
+        }
+    }
+
+    /**
+     * Recompute the validity of one cell, counting it if invalid.
+     *
+     * @param i the cell
+     */
+    private void check(final int i) {
+        int v = cells[i];
+        valid[i] = v == 0 || (rows[row(i) * 10 + v] == 1
+                              && cols[col(i) * 10 + v] == 1
+                              && boxes[box(i) * 10 + v] == 1);
+        if (!valid[i]) {
+            invalid++;
+        }
+        rechecked[rechecks++] = i;
+    }
+
+    /**
+     * The row of a flat cell index.
+     *
+     * @param i flat cell index
+     * @return row, 0 through 8
+     */
+    private static int row(final int i) {
+        return i / 9;
+    }
+
+    /**
+     * The column of a flat cell index.
+     *
+     * @param i flat cell index
+     * @return column, 0 through 8
+     */
+    private static int col(final int i) {
+        return i % 9;
+    }
+
+    /**
+     * The box of a flat cell index.
+     *
+     * @param i flat cell index
+     * @return box, 0 through 8
+     */
+    private static int box(final int i) {
+        return (row(i) / 3) * 3 + col(i) / 3;
+    }
+}
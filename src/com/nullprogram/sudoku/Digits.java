@@ -0,0 +1,44 @@
+package com.nullprogram.sudoku;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Collections;
+
+/**
+ * Helpers for iterating over cell values.
+ */
+final class Digits {
+
+    /**
+     * Hidden constructor.
+     */
+    private Digits() {
+    }
+
+    /**
+     * Return a randomly sorted array of 0-9.
+     *
+     * @param rng source of randomness
+     * @return random list of 0-9
+     */
+    static Byte[] rand10(final Random rng) {
+        Byte[] nums = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        Collections.shuffle(Arrays.asList(nums), rng);
+        return nums;
+    }
+
+    /**
+     * Shuffle an array of values in place, allocating nothing.
+     *
+     * @param values the values to shuffle
+     * @param rng source of randomness
+     */
+    static void shuffle(final byte[] values, final Random rng) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            byte tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
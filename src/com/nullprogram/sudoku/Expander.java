@@ -0,0 +1,251 @@
+package com.nullprogram.sudoku;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.LongFunction;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Turns one puzzle into many equivalent puzzles by relabeling digits
+ * and rearranging rows and columns.
+ *
+ * Every transform used maps a valid Sudoku to a valid Sudoku with the
+ * same number of solutions, so variants need no uniqueness check. The
+ * row and column rearrangements are limited to those that also keep
+ * the rotational symmetry of the givens: swapping the outer bands,
+ * rearranging the rows of the top band (mirrored in the bottom band),
+ * and swapping the outer rows of the middle band. Together with
+ * transposing and the 9! relabelings this gives over 400 million
+ * variants of each puzzle.
+ *
+ * Transforms are numbered in mixed radix: row order, column order,
+ * transpose and relabeling, with transform 0 the identity. Numbering
+ * lets {@link #expand(Board, long)} draw variants without replacement.
+ */
+public class Expander {
+
+    /* Every band-preserving line order that commutes with i -> 8 - i. */
+    private static final int[][] LINE_ORDERS = lineOrders();
+
+    /* Number of relabelings, 9!. */
+    private static final int LABELINGS = 362880;
+
+    /** The number of distinct transforms, including the identity. */
+    public static final long TRANSFORMS =
+        (long) LINE_ORDERS.length * LINE_ORDERS.length * 2 * LABELINGS;
+
+    private final Random rng;
+
+    /**
+     * Create an expander.
+     *
+     * @param random source of randomness for choosing transforms
+     */
+    public Expander(final Random random) {
+        rng = random;
+    }
+
+    /**
+     * Batch mode: print variants of freshly generated puzzles.
+     *
+     * Arguments are <code>[-g givens] [-s seeds] variants</code>, and
+     * puzzles are written one per line in the 81-character format.
+     *
+     * @param args command line arguments
+     * @throws IOException if writing fails
+     */
+    public static void main(final String[] args) throws IOException {
+        int givens = Generator.EASY;
+        int seeds = 1;
+        long variants = 1000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-g") && i + 1 < args.length) {
+                givens = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-s") && i + 1 < args.length) {
+                seeds = Integer.parseInt(args[++i]);
+            } else {
+                variants = Long.parseLong(args[i]);
+            }
+        }
+        Generator generator = new Generator();
+        Expander expander = new Expander(new Random());
+        Writer out = new BufferedWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.US_ASCII),
+            1 << 16);
+        for (int s = 0; s < seeds; s++) {
+            Board seed = generator.generate(givens);
+            Iterator<Board> it = expander.expand(seed, variants).iterator();
+            while (it.hasNext()) {
+                out.write(it.next().toString());
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Return a randomly chosen variant of a puzzle.
+     *
+     * @param puzzle the puzzle to transform
+     * @return a new, equivalent puzzle
+     */
+    public final Board transform(final Board puzzle) {
+        return transform(puzzle, 1 + randomBelow(TRANSFORMS - 1));
+    }
+
+    /**
+     * Apply a numbered transform to a puzzle.
+     *
+     * @param puzzle the puzzle to transform
+     * @param n the transform, from 0 below {@link #TRANSFORMS}
+     * @return a new, equivalent puzzle
+     */
+    public static Board transform(final Board puzzle, final long n) {
+        if (n < 0 || n >= TRANSFORMS) {
+            throw new IllegalArgumentException("No transform " + n);
+        }
+        int orders = LINE_ORDERS.length;
+        int[] rows = LINE_ORDERS[(int) (n % orders)];
+        int[] cols = LINE_ORDERS[(int) (n / orders % orders)];
+        boolean transpose = n / orders / orders % 2 != 0;
+        byte[] labels = labels((int) (n / orders / orders / 2));
+        Board variant = new Board();
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                byte val = puzzle.get(x, y);
+                if (val > 0) {
+                    int xx = cols[x];
+                    int yy = rows[y];
+                    if (transpose) {
+                        variant.set(yy, xx, labels[val]);
+                    } else {
+                        variant.set(xx, yy, labels[val]);
+                    }
+                }
+            }
+        }
+        return variant;
+    }
+
+    /**
+     * Stream randomly chosen variants of a puzzle, each by a different
+     * transform and none by the identity.
+     *
+     * Transform numbers are visited by a random stride, coprime to the
+     * number of non-identity transforms, from a random start, so no
+     * number comes up twice. A puzzle with symmetries of its own can
+     * still give the same variant by two transforms.
+     *
+     * @param seed the puzzle to transform
+     * @param count number of variants to produce
+     * @return stream of count variants
+     * @throws IllegalArgumentException if count exceeds the number of
+     *         non-identity transforms
+     */
+    public final Stream<Board> expand(final Board seed, final long count) {
+        final long m = TRANSFORMS - 1;
+        if (count < 0 || count > m) {
+            throw new IllegalArgumentException("Bad count: " + count);
+        }
+        final long start = randomBelow(m);
+        long s;
+        do {
+            s = 1 + randomBelow(m - 1);
+        } while (gcd(s, m) != 1);
+        final long stride = s;
+        return LongStream.range(0, count).mapToObj(new LongFunction<Board>() {
+            public Board apply(final long i) {
+                return transform(seed, 1 + (start + i * stride) % m);
+            }
+        });
+    }
+
+    /**
+     * Decode a numbered relabeling.
+     *
+     * @param n the relabeling, from 0 below 9!, with 0 the identity
+     * @return map from old value to new value, with 0 kept empty
+     */
+    private static byte[] labels(final int n) {
+        byte[] unused = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        byte[] labels = new byte[10];
+        int rest = n;
+        int radix = LABELINGS;
+        for (int i = 1; i <= 9; i++) {
+            radix /= 10 - i;
+            int k = rest / radix;
+            rest %= radix;
+            labels[i] = unused[k];
+            System.arraycopy(unused, k + 1, unused, k, 9 - i - k);
+        }
+        return labels;
+    }
+
+    /**
+     * Draw a uniformly random number below a bound.
+     *
+     * @param bound the bound, positive
+     * @return a number from 0 below bound
+     */
+    private long randomBelow(final long bound) {
+        long r;
+        long v;
+        do {
+            r = rng.nextLong() >>> 1;
+            v = r % bound;
+        } while (r - v + (bound - 1) < 0);
+        return v;
+    }
+
+    /**
+     * The greatest common divisor of two numbers.
+     *
+     * @param a a positive number
+     * @param b a positive number
+     * @return their greatest common divisor
+     */
+    private static long gcd(final long a, final long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * Find the line orders that keep bands together and keep the
+     * rotational symmetry.
+     *
+     * @return each order as a map from old line to new line
+     */
+    private static int[][] lineOrders() {
+        int[][] perms = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0},
+        };
+        int[][] found = new int[24][];
+        int n = 0;
+        for (int[] bands : perms) {
+            for (int[] a : perms) {
+                for (int[] b : perms) {
+                    for (int[] c : perms) {
+                        int[][] within = {a, b, c};
+                        int[] order = new int[9];
+                        for (int i = 0; i < 9; i++) {
+                            order[i] = bands[i / 3] * 3 + within[i / 3][i % 3];
+                        }
+                        boolean symmetric = true;
+                        for (int i = 0; i < 9; i++) {
+                            symmetric &= order[8 - i] == 8 - order[i];
+                        }
+                        if (symmetric) {
+                            found[n++] = order;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+}
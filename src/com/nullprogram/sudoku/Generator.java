@@ -0,0 +1,560 @@
+package com.nullprogram.sudoku;
+
+import java.util.Random;
+import java.util.Stack;
+import java.util.Collections;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generates Sudoku puzzles with a unique solution and symmetrical
+ * givens.
+ *
+ * A generator holds no state between calls to {@link #generate(int)}
+ * other than its counters, so a single instance may be used from
+ * several threads at once.
+ *
+ * Each attempt at a puzzle may visit only a fixed number of search
+ * nodes in uniqueness checks before it is abandoned and restarted.
+ * Counting nodes rather than time keeps attempts independent of the
+ * machine's speed and load.
+ *
+ * Each puzzle is generated from a 64-bit seed by its own random number
+ * generator, so a seed, a number of givens and an attempt budget
+ * always produce the same puzzle, on any machine and from any thread,
+ * as long as generation is not cancelled. A puzzle can therefore be
+ * stored as just its seed and givens and regenerated on demand. Seeds
+ * for a series of puzzles are derived with {@link #split(long, long)}.
+ *
+ * Puzzles are built by one of two {@link Strategy strategies}: adding
+ * givens until the solution is unique, or filling a random solution
+ * and digging holes in it. Either way givens are removed in mirrored
+ * pairs, so the puzzle is symmetric under a half turn. The strategy is
+ * part of what a seed reproduces. The center is never a given, so the
+ * number of givens is always even, from {@link #MIN_GIVENS} to
+ * {@link #MAX_GIVENS}.
+ *
+ * Each puzzle comes with its solution, found anyway while eliminating
+ * givens, in {@link Board#getSolution()}.
+ *
+ * Attempts, restarts, uniqueness checks and the latency of each puzzle
+ * are recorded in a {@link Metrics}.
+ */
+public class Generator {
+
+    /** The easiest difficulty (32 givens). */
+    public static final int EASY = 32;
+
+    /** A medium difficulty (28 givens). */
+    public static final int MEDIUM = 28;
+
+    /** A hard difficulty (24 givens). */
+    public static final int HARD = 24;
+
+    /** The fewest givens a generated puzzle can have. */
+    public static final int MIN_GIVENS = 18;
+
+    /** The most givens a generated puzzle can have. */
+    public static final int MAX_GIVENS = 80;
+
+    /** Default number of search nodes allowed for one attempt. */
+    public static final long ATTEMPT_NODES = 10000;
+
+    /* Removals an attempt may try while backtracking to the goal. */
+    private static final int REMOVAL_TRIES = 500;
+
+    /* Golden ratio increment of SplitMix64. */
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * How an attempt gets to its first puzzle with a unique solution,
+     * from which givens are then eliminated down to the goal.
+     */
+    public enum Strategy {
+
+        /** Add symmetric pairs of givens, checking uniqueness after each. */
+        CONSTRUCT,
+
+        /** Fill a random solution and dig holes from all 80 givens. */
+        DIG;
+    }
+
+    private final Random seeds;
+    private final long attemptNodes;
+    private final Metrics metrics;
+    private final Strategy strategy;
+
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+
+    /**
+     * Create a new generator with the default attempt budget.
+     */
+    public Generator() {
+        this(new Random(), ATTEMPT_NODES);
+    }
+
+    /**
+     * Create a new generator.
+     *
+     * @param random source of seeds when none is given, or null if
+     *        every call gives a seed
+     * @param budget search nodes allowed for one attempt
+     */
+    public Generator(final Random random, final long budget) {
+        this(random, budget, Metrics.global());
+    }
+
+    /**
+     * Create a new generator that records into the given metrics.
+     *
+     * @param random source of seeds when none is given, or null if
+     *        every call gives a seed
+     * @param budget search nodes allowed for one attempt
+     * @param metrics where to record attempts and latencies
+     */
+    public Generator(final Random random, final long budget,
+                     final Metrics metrics) {
+        this(random, budget, metrics, Strategy.CONSTRUCT);
+    }
+
+    /**
+     * Create a new generator using the given strategy.
+     *
+     * @param random source of seeds when none is given, or null if
+     *        every call gives a seed
+     * @param budget search nodes allowed for one attempt
+     * @param metrics where to record attempts and latencies
+     * @param strategy how each attempt builds its first unique puzzle
+     */
+    public Generator(final Random random, final long budget,
+                     final Metrics metrics, final Strategy strategy) {
+        seeds = random;
+        attemptNodes = budget;
+        this.metrics = metrics;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Generate a new puzzle.
+     *
+     * Attempts that run out of budget or cannot reach the goal are
+     * abandoned and started over.
+     *
+     * @param givensGoal number of givens the puzzle should have
+     * @return the new puzzle
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Board generate(final int givensGoal) {
+        return generate(givensGoal, Cancellation.NONE);
+    }
+
+    /**
+     * Generate a new puzzle, stopping early if cancelled.
+     *
+     * If cancelled before a puzzle with exactly givensGoal givens is
+     * found, the valid puzzle closest to the goal from the attempts so
+     * far is returned instead, which has more givens than asked for.
+     * If no attempt got as far as a valid puzzle, a completely filled
+     * grid is returned.
+     *
+     * @param givensGoal number of givens the puzzle should have
+     * @param cancel polled to decide when to give up
+     * @return the new puzzle, with a unique solution
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Board generate(final int givensGoal,
+                                final Cancellation cancel) {
+        return generate(seeds.nextLong(), givensGoal, cancel);
+    }
+
+    /**
+     * Generate the puzzle for a seed.
+     *
+     * @param seed the puzzle's seed
+     * @param givensGoal number of givens the puzzle should have
+     * @return the new puzzle
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Board generate(final long seed, final int givensGoal) {
+        return generate(seed, givensGoal, Cancellation.NONE);
+    }
+
+    /**
+     * Generate the puzzle for a seed, stopping early if cancelled.
+     *
+     * The result depends only on the seed, the goal and the attempt
+     * budget, unless cancellation cuts generation short, in which case
+     * it is as described for {@link #generate(int, Cancellation)}.
+     *
+     * @param seed the puzzle's seed
+     * @param givensGoal number of givens the puzzle should have
+     * @param cancel polled to decide when to give up
+     * @return the new puzzle, with a unique solution
+     * @throws IllegalArgumentException if givensGoal cannot be reached
+     */
+    public final Board generate(final long seed, final int givensGoal,
+                                final Cancellation cancel) {
+        checkGoal(givensGoal);
+        long start = System.nanoTime();
+        Work work = new Work(seed, cancel);
+        Board best = null;
+        int attempts = 0;
+        try {
+            while (true) {
+                attempts++;
+                metrics.attempt();
+                try {
+                    work.reset();
+                    if (build(work)) {
+                        work.solution = new Board(work.grid);
+                        work.checker.solve(work.solution);
+                        pad(work, givensGoal);
+                        work.keep();
+                        eliminate(work, givensGoal);
+                    }
+                } catch (TimeoutException e) {
+                    /* Out of budget, or cancelled. */
+                    metrics.timeout();
+                }
+                Board closest = work.closest;
+                if (closest != null && closest.filled() >= givensGoal
+                        && (best == null || closest.filled() < best.filled())) {
+                    best = closest;
+                }
+                if (best != null && best.filled() == givensGoal) {
+                    metrics.generated(givensGoal, System.nanoTime() - start);
+                    metrics.attempts(givensGoal, attempts);
+                    return best;
+                } else if (cancel.isCancelled()) {
+                    if (best == null) {
+                        best = new Board();
+                        new BacktrackSolver(work.rng).solve(best);
+                        best.setSolution(new Board(best));
+                    }
+                    return best;
+                }
+                restarts.increment();
+                metrics.restart();
+            }
+        } finally {
+            nodes.add(work.checker.getNodes());
+            metrics.checked(work.checker.getChecks(),
+                            work.checker.getNodes());
+        }
+    }
+
+    /**
+     * Check that a number of givens can be generated.
+     *
+     * @param givensGoal number of givens a puzzle should have
+     * @throws IllegalArgumentException if it is odd or out of range
+     */
+    static void checkGoal(final int givensGoal) {
+        if (givensGoal < MIN_GIVENS || givensGoal > MAX_GIVENS
+                || givensGoal % 2 != 0) {
+            throw new IllegalArgumentException(
+                "Givens must be even, from " + MIN_GIVENS + " to "
+                + MAX_GIVENS + ": " + givensGoal);
+        }
+    }
+
+    /**
+     * The total search nodes visited by uniqueness checks so far.
+     *
+     * @return number of nodes
+     */
+    public final long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * The total number of abandoned attempts so far.
+     *
+     * @return number of restarts
+     */
+    public final long getRestarts() {
+        return restarts.sum();
+    }
+
+    /**
+     * Derive the seed of one puzzle in a series.
+     *
+     * This is the SplitMix64 mixing function, so every index of a base
+     * seed gets a well-distributed, independent seed, and any one can
+     * be computed directly without generating those before it.
+     *
+     * @param base seed of the whole series
+     * @param index position in the series
+     * @return the seed for that position
+     */
+    public static long split(final long base, final long index) {
+        long z = base + (index + 1) * GAMMA;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Return mirror of position.
+     *
+     * @param pos position to mirror
+     * @return mirrored position
+     */
+    static Position mirror(final Position pos) {
+        return new Position((byte) (8 - pos.getX()), (byte) (8 - pos.getY()));
+    }
+
+    /**
+     * Build a first puzzle with a unique solution by the strategy.
+     *
+     * @param work the attempt in progress
+     * @return true if build was successful
+     * @throws TimeoutException if generation took too long
+     */
+    private boolean build(final Work work) throws TimeoutException {
+        if (strategy == Strategy.DIG) {
+            return fill(work);
+        } else {
+            return generate(work);
+        }
+    }
+
+    /**
+     * Fill the grid with a random solution, the start of digging.
+     *
+     * Propagation leaves few choices for the backtracking, so a grid
+     * takes only microseconds and no uniqueness checks. The center is
+     * emptied, as it never holds a given in a constructed puzzle, and
+     * every other position is then free for elimination.
+     *
+     * @param work the attempt in progress
+     * @return true if build was successful
+     */
+    private boolean fill(final Work work) {
+        if (!work.filler.solve(work.grid)) {
+            return false;
+        }
+        work.grid.unset(4, 4);
+        while (!work.positions.empty()) {
+            work.used.push(work.positions.pop());
+        }
+        return true;
+    }
+
+    /**
+     * Fill in symmetrical pairs of givens until there is one solution.
+     *
+     * @param work the attempt in progress
+     * @return true if build was successful
+     * @throws TimeoutException if generation took too long
+     */
+    private boolean generate(final Work work) throws TimeoutException {
+        Board grid = work.grid;
+        Position pos1 = work.positions.pop();
+        Position pos2 = mirror(pos1);
+        work.used.push(pos1);
+        int possible1 = grid.candidates(pos1.getX(), pos1.getY());
+        for (byte i : Digits.rand10(work.rng)) {
+            if ((possible1 & (1 << i)) != 0) {
+                grid.set(pos1.getX(), pos1.getY(), i);
+                for (byte j : Digits.rand10(work.rng)) {
+                    int possible2 = grid.candidates(pos2.getX(), pos2.getY());
+                    if ((possible2 & (1 << j)) != 0) {
+                        grid.set(pos2.getX(), pos2.getY(), j);
+                        int solutions = work.checker.numSolutions(grid);
+                        if (solutions > 1) {
+                            /* Keep filling in. */
+                            if (generate(work)) {
+                                return true;
+                            }
+                        } else if (solutions == 1) {
+                            /* Done, exactly one solution left. */
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        /* Failed to generate a sudoku from here. */
+        grid.unset(pos1.getX(), pos1.getY());
+        grid.unset(pos2.getX(), pos2.getY());
+        work.positions.push(pos1);
+        work.used.pop();
+        return false;
+    }
+
+    /**
+     * Add mirrored pairs of givens from the solution until the puzzle
+     * has at least givensGoal, for goals above what the build left.
+     *
+     * Adding givens keeps the solution unique.
+     *
+     * @param work the attempt in progress
+     * @param givensGoal number of givens the puzzle should have
+     */
+    private static void pad(final Work work, final int givensGoal) {
+        Board grid = work.grid;
+        while (grid.filled() < givensGoal && !work.positions.empty()) {
+            Position pos1 = work.positions.pop();
+            Position pos2 = mirror(pos1);
+            grid.set(pos1.getX(), pos1.getY(),
+                     work.solution.get(pos1.getX(), pos1.getY()));
+            grid.set(pos2.getX(), pos2.getY(),
+                     work.solution.get(pos2.getX(), pos2.getY()));
+            work.used.push(pos1);
+        }
+    }
+
+    /**
+     * Eliminate givens until exactly givensGoal remain.
+     *
+     * The puzzle is unique on entry and its solution already found, so
+     * each removal is checked by searching only for a solution that
+     * differs from it in the removed cells. Removals are tried greedily
+     * at first, and when that stalls above the goal the search backs
+     * up and tries other pairs in place of earlier removals. The
+     * fewest givens reached are kept in the attempt's closest puzzle.
+     *
+     * @param work the attempt in progress
+     * @param givensGoal number of givens to stop at
+     * @return true if the goal was reached
+     * @throws TimeoutException if generation took too long
+     */
+    private boolean eliminate(final Work work, final int givensGoal)
+        throws TimeoutException {
+        UniquenessChecker checker = work.checker;
+        long start = checker.getNodes();
+        metrics.eliminationPass();
+        work.sets = new UnavoidableSets(work.solution);
+        work.tries = 0;
+        Collections.shuffle(work.used, work.rng);
+        try {
+            return eliminate(work, givensGoal, 0);
+        } finally {
+            metrics.eliminationNodes(checker.getNodes() - start);
+        }
+    }
+
+    /**
+     * Try removing each remaining pair in turn, backtracking on failure.
+     *
+     * @param work the attempt in progress
+     * @param givensGoal number of givens to stop at
+     * @param from index in work.used of the first pair to try
+     * @return true if the goal was reached
+     * @throws TimeoutException if generation took too long
+     */
+    private boolean eliminate(final Work work, final int givensGoal,
+                              final int from) throws TimeoutException {
+        Board grid = work.grid;
+        Stack<Position> used = work.used;
+        for (int k = from; k < used.size(); k++) {
+            if (grid.filled() == givensGoal) {
+                return true;
+            }
+            Position pos1 = used.get(k);
+            Position pos2 = mirror(pos1);
+            int removed = pos1.getX() == pos2.getX()
+                && pos1.getY() == pos2.getY() ? 1 : 2;
+            if (grid.filled() - removed < givensGoal) {
+                continue;
+            }
+            if (++work.tries > REMOVAL_TRIES) {
+                throw new TimeoutException();
+            }
+            byte val1 = grid.get(pos1.getX(), pos1.getY());
+            byte val2 = grid.get(pos2.getX(), pos2.getY());
+            grid.unset(pos1.getX(), pos1.getY());
+            grid.unset(pos2.getX(), pos2.getY());
+            boolean restore = true;
+            try {
+                if (!work.sets.hitsAll(grid)) {
+                    metrics.eliminationSkip();
+                } else if (work.checker.hasOtherSolution(grid, work.solution,
+                                                         work.other,
+                                                         pos1, pos2)) {
+                    work.sets.learn(work.solution, work.other);
+                } else {
+                    work.keep();
+                    restore = !eliminate(work, givensGoal, k + 1);
+                }
+            } finally {
+                if (restore) {
+                    /* Also keeps the puzzle valid if the check stopped. */
+                    grid.set(pos1.getX(), pos1.getY(), val1);
+                    grid.set(pos2.getX(), pos2.getY(), val2);
+                }
+            }
+            if (!restore) {
+                return true;
+            }
+        }
+        return grid.filled() == givensGoal;
+    }
+
+    /**
+     * The state of one generation attempt.
+     */
+    private final class Work {
+
+        private final Random rng;
+        private final Board grid = new Board();
+        private final UniquenessChecker checker = new UniquenessChecker();
+        private final Solver filler;
+        private Stack<Position> positions;
+        private Stack<Position> used;
+
+        /* Elimination state: the solution and what is known about it. */
+        private Board solution;
+        private UnavoidableSets sets;
+        private final Board other = new Board();
+        private int tries;
+
+        /* Valid puzzle with the fewest givens reached so far. */
+        private Board closest;
+
+        /**
+         * Create the state for a new puzzle.
+         *
+         * @param seed seed for this puzzle's randomness
+         * @param cancel polled to decide when to give up
+         */
+        private Work(final long seed, final Cancellation cancel) {
+            rng = new Random(seed);
+            filler = new BacktrackSolver(rng, metrics);
+            checker.setCancellation(cancel);
+        }
+
+        /**
+         * Clear the grid and create a symmetrical order the positions.
+         */
+        private void reset() {
+            closest = null;
+            grid.clear();
+            checker.setBudget(attemptNodes);
+            positions = new Stack<Position>();
+            used = new Stack<Position>();
+            for (byte y = 0; y < 9; y++) {
+                for (byte x = 0; x < y; x++) {
+                    Position pos = new Position(x, y);
+                    positions.push(pos);
+                }
+            }
+            for (byte i = 0; i < 4; i++) {
+                positions.push(new Position(i, i));
+            }
+            Collections.shuffle(positions, rng);
+        }
+
+        /**
+         * Note that the grid is a valid puzzle, keeping a copy with
+         * its solution if it has the fewest givens so far.
+         */
+        private void keep() {
+            if (closest == null || grid.filled() < closest.filled()) {
+                closest = new Board(grid);
+                closest.setSolution(solution);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.nullprogram.sudoku;
+
+/**
+ * A Sudoku grid of any size made of square boxes: 9x9, 16x16, 25x25.
+ *
+ * This is the counterpart of {@link Board} for larger puzzles. A grid
+ * with boxes of side n has N = n * n rows, columns, boxes and values,
+ * and N * N cells, stored flat in row order. As in Board, bit v of an
+ * occupancy mask stands for the value v, so an int holds the masks of
+ * grids up to 25x25.
+ */
+public class Grid {
+
+    /** The largest supported box side, for 25x25 grids. */
+    public static final int MAX_BOX = 5;
+
+    private final int box;
+    private final int size;
+    private final int all;
+    private final int[] cells;
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] boxes;
+    private int filled;
+
+    /**
+     * Create a new empty grid.
+     *
+     * @param boxSize side of a box, 3 for a 9x9 grid
+     */
+    public Grid(final int boxSize) {
+        if (boxSize < 2 || boxSize > MAX_BOX) {
+            throw new IllegalArgumentException("Bad box size: " + boxSize);
+        }
+        box = boxSize;
+        size = boxSize * boxSize;
+        all = ((1 << size) - 1) << 1;
+        cells = new int[size * size];
+        rows = new int[size];
+        cols = new int[size];
+        boxes = new int[size];
+    }
+
+    /**
+     * Create a new grid holding the values of another grid.
+     *
+     * @param grid the grid to copy
+     */
+    public Grid(final Grid grid) {
+        this(grid.box);
+        copyFrom(grid);
+    }
+
+    /**
+     * Create a new 9x9 grid holding the values of a board.
+     *
+     * @param board the board to copy
+     */
+    public Grid(final Board board) {
+        this(3);
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                set(x, y, board.get(x, y));
+            }
+        }
+    }
+
+    /**
+     * The side of a box.
+     *
+     * @return box side
+     */
+    public final int boxSize() {
+        return box;
+    }
+
+    /**
+     * The number of rows, columns and values.
+     *
+     * @return side of the grid
+     */
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Mask with every value set.
+     *
+     * @return mask of bits 1 through size()
+     */
+    public final int all() {
+        return all;
+    }
+
+    /**
+     * Get the value at a cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return the value, or 0 if empty
+     */
+    public final int get(final int x, final int y) {
+        return cells[y * size + x];
+    }
+
+    /**
+     * Set the value at a cell, replacing any existing value.
+     *
+     * @param x x position
+     * @param y y position
+     * @param val the new value, or 0 to empty the cell
+     */
+    public final void set(final int x, final int y, final int val) {
+        unset(x, y);
+        if (val > 0) {
+            int bit = 1 << val;
+            cells[y * size + x] = val;
+            rows[y] |= bit;
+            cols[x] |= bit;
+            boxes[box(x, y)] |= bit;
+            filled++;
+        }
+    }
+
+    /**
+     * Reset a cell to empty.
+     *
+     * @param x x position
+     * @param y y position
+     */
+    public final void unset(final int x, final int y) {
+        int val = cells[y * size + x];
+        if (val > 0) {
+            int bit = ~(1 << val);
+            cells[y * size + x] = 0;
+            rows[y] &= bit;
+            cols[x] &= bit;
+            boxes[box(x, y)] &= bit;
+            filled--;
+        }
+    }
+
+    /**
+     * Candidate values for an empty cell as a mask.
+     *
+     * @param x x position
+     * @param y y position
+     * @return mask of values not used by the cell's row, column or box
+     */
+    public final int candidates(final int x, final int y) {
+        return all & ~(rows[y] | cols[x] | boxes[box(x, y)]);
+    }
+
+    /**
+     * Return the number of filled cells.
+     *
+     * @return number of filled cells
+     */
+    public final int filled() {
+        return filled;
+    }
+
+    /**
+     * Empty every cell.
+     */
+    public final void clear() {
+        java.util.Arrays.fill(cells, 0);
+        java.util.Arrays.fill(rows, 0);
+        java.util.Arrays.fill(cols, 0);
+        java.util.Arrays.fill(boxes, 0);
+        filled = 0;
+    }
+
+    /**
+     * Replace this grid's values with those of another grid of the same
+     * size.
+     *
+     * @param grid the grid to copy
+     */
+    public final void copyFrom(final Grid grid) {
+        if (grid.box != box) {
+            throw new IllegalArgumentException("Grid sizes differ.");
+        }
+        System.arraycopy(grid.cells, 0, cells, 0, cells.length);
+        System.arraycopy(grid.rows, 0, rows, 0, size);
+        System.arraycopy(grid.cols, 0, cols, 0, size);
+        System.arraycopy(grid.boxes, 0, boxes, 0, size);
+        filled = grid.filled;
+    }
+
+    /**
+     * Parse a grid, one character per cell in row order.
+     *
+     * Values are written 1 through 9 and then A onwards, so 16 is 'G'
+     * and 25 is 'P'. A '0' or '.' marks an empty cell. The size of the
+     * grid follows from the length of the text: 81, 256 or 625 cells.
+     *
+     * @param text the grid as text
+     * @return the parsed grid
+     * @throws IllegalArgumentException if the text is not a grid
+     */
+    public static Grid parse(final CharSequence text) {
+        int n = 2;
+        while (n <= MAX_BOX && n * n * n * n != text.length()) {
+            n++;
+        }
+        if (n > MAX_BOX) {
+            throw new IllegalArgumentException("Not a square grid.");
+        }
+        Grid grid = new Grid(n);
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toUpperCase(text.charAt(i));
+            int val;
+            if (c == '0' || c == '.') {
+                val = 0;
+            } else if (c >= '1' && c <= '9') {
+                val = c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                val = c - 'A' + 10;
+            } else {
+                val = Integer.MAX_VALUE;
+            }
+            if (val > grid.size) {
+                throw new IllegalArgumentException("Bad cell: " + c);
+            }
+            grid.set(i % grid.size, i / grid.size, val);
+        }
+        return grid;
+    }
+
+    /**
+     * The grid with one character per cell, and '.' for empty cells.
+     *
+     * @return the grid as text
+     */
+    public final String toString() {
+        StringBuilder sb = new StringBuilder(cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            int val = cells[i];
+            if (val == 0) {
+                sb.append('.');
+            } else if (val < 10) {
+                sb.append((char) ('0' + val));
+            } else {
+                sb.append((char) ('A' + val - 10));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The index of the box containing a cell.
+     *
+     * @param x x position
+     * @param y y position
+     * @return box index
+     */
+    private int box(final int x, final int y) {
+        return (y / box) * box + x / box;
+    }
+}
@@ -0,0 +1,154 @@
+package com.nullprogram.sudoku;
+
+import java.util.Random;
+
+/**
+ * Generates puzzles of any {@link Grid} size with a unique solution
+ * and symmetrical givens.
+ *
+ * Rather than adding givens until the solution is unique and starting
+ * over whenever an attempt runs long, which never finishes on large
+ * grids, this fills a grid with a random solution and then digs holes
+ * in it. Givens are removed in mirrored pairs, in random order, and
+ * put back whenever the puzzle stops being unique. Each uniqueness
+ * check has a fixed node budget, and a check that runs out counts as
+ * not unique, so the work done is bounded by the number of cells
+ * rather than by luck. The puzzle is complete once it reaches the goal
+ * or every pair has been tried, whichever comes first.
+ *
+ * As with {@link Generator}, a seed, size, goal and budget always
+ * produce the same puzzle.
+ */
+public class GridGenerator {
+
+    /** Default number of search nodes allowed for one check. */
+    public static final long CHECK_NODES = 200;
+
+    /** Default number of search nodes allowed for filling a grid. */
+    public static final long FILL_NODES = 100000;
+
+    private final Random seeds;
+    private final long checkNodes;
+
+    /**
+     * Create a new generator with the default check budget.
+     */
+    public GridGenerator() {
+        this(new Random(), CHECK_NODES);
+    }
+
+    /**
+     * Create a new generator.
+     *
+     * @param random source of seeds when none is given
+     * @param budget search nodes allowed for one uniqueness check
+     */
+    public GridGenerator(final Random random, final long budget) {
+        seeds = random;
+        checkNodes = budget;
+    }
+
+    /**
+     * Generate a new puzzle.
+     *
+     * @param boxSize side of a box, 4 for a 16x16 grid
+     * @param givensGoal number of givens to stop at
+     * @return the new puzzle, possibly with more givens than the goal
+     */
+    public final Grid generate(final int boxSize, final int givensGoal) {
+        return generate(seeds.nextLong(), boxSize, givensGoal);
+    }
+
+    /**
+     * Generate the puzzle for a seed.
+     *
+     * @param seed the puzzle's seed
+     * @param boxSize side of a box, 4 for a 16x16 grid
+     * @param givensGoal number of givens to stop at
+     * @return the new puzzle, possibly with more givens than the goal
+     */
+    public final Grid generate(final long seed, final int boxSize,
+                               final int givensGoal) {
+        Random rng = new Random(seed);
+        GridSolver solver = new GridSolver(boxSize);
+        Grid grid = fill(solver, boxSize, rng);
+        dig(solver, grid, givensGoal, rng);
+        return grid;
+    }
+
+    /**
+     * Create a grid holding a random solution.
+     *
+     * @param solver solver for this grid size
+     * @param boxSize side of a box
+     * @param rng source of randomness
+     * @return a full grid
+     */
+    private static Grid fill(final GridSolver solver, final int boxSize,
+                             final Random rng) {
+        Grid grid = new Grid(boxSize);
+        while (true) {
+            solver.setBudget(FILL_NODES);
+            try {
+                if (solver.solve(grid, rng)) {
+                    return grid;
+                }
+            } catch (TimeoutException e) {
+                /* Unlucky choices early on; start again. */
+                grid.clear();
+            }
+        }
+    }
+
+    /**
+     * Remove mirrored pairs of givens while the solution stays unique.
+     *
+     * A pair that would take the grid below the goal is skipped, so
+     * digging never overshoots it.
+     *
+     * @param solver solver for this grid size
+     * @param grid a full grid, dug out in place
+     * @param givensGoal number of givens to stop at
+     * @param rng source of randomness
+     */
+    private void dig(final GridSolver solver, final Grid grid,
+                     final int givensGoal, final Random rng) {
+        int size = grid.size();
+        int cells = size * size;
+        /* One cell of each mirrored pair, plus the center if any. */
+        int[] order = new int[(cells + 1) / 2];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = rng.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        for (int k = 0; k < order.length && grid.filled() > givensGoal; k++) {
+            int i = order[k];
+            int j = cells - 1 - i;
+            int removed = i == j ? 1 : 2;
+            if (grid.filled() - removed < givensGoal) {
+                continue;
+            }
+            int val1 = grid.get(i % size, i / size);
+            int val2 = grid.get(j % size, j / size);
+            grid.unset(i % size, i / size);
+            grid.unset(j % size, j / size);
+            boolean unique = false;
+            solver.setBudget(checkNodes);
+            try {
+                unique = solver.countSolutions(grid, 2) == 1;
+            } catch (TimeoutException e) {
+                /* Too hard to tell, so keep the givens. */
+                unique = false;
+            }
+            if (!unique) {
+                grid.set(i % size, i / size, val1);
+                grid.set(j % size, j / size, val2);
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.nullprogram.sudoku;
+
+import java.util.Random;
+
+/**
+ * Solves and counts the solutions of grids of one size, giving up
+ * when cancelled or when a node budget runs out.
+ *
+ * This is the {@link UniquenessChecker} search generalized to any
+ * {@link Grid} size. Larger grids need more than naked singles to
+ * stay out of deep searches, so before each branch the search also
+ * fills in hidden singles, values with only one place left in some
+ * row, column or box. It then branches on the cell with the fewest
+ * candidates. A solver keeps its budget and search state between
+ * calls, so each thread should use its own instance.
+ */
+public class GridSolver {
+
+    /* Poll the cancellation when the node count is a multiple of this. */
+    private static final int POLL_MASK = 0xFFF;
+
+    private final int size;
+    private final int all;
+    private final int numCells;
+
+    /* Row, column and box of each flat cell index. */
+    private final int[] row;
+    private final int[] col;
+    private final int[] box;
+
+    /* Cells of each row, column and box. */
+    private final int[][] units;
+
+    private Cancellation cancellation = Cancellation.NONE;
+    private long nodeLimit = Long.MAX_VALUE;
+    private boolean stopped;
+    private long nodes;
+
+    /* Search state, with each value stored as its mask bit. */
+    private final int[] cells;
+    private final int[] rows;
+    private final int[] cols;
+    private final int[] boxes;
+
+    /* Cells filled by propagation, in order, so they can be undone. */
+    private final int[] trail;
+    private int top;
+
+    /* Most constrained empty cell found by propagate(). */
+    private int best;
+
+    /* Branch orders for each depth of the search. */
+    private final int[][] orders;
+    private int depth;
+    private Random rng;
+
+    /**
+     * Create a solver for grids with the given box side.
+     *
+     * @param boxSize side of a box, 3 for 9x9 grids
+     */
+    public GridSolver(final int boxSize) {
+        size = boxSize * boxSize;
+        all = ((1 << size) - 1) << 1;
+        numCells = size * size;
+        row = new int[numCells];
+        col = new int[numCells];
+        box = new int[numCells];
+        units = new int[size * 3][size];
+        int[] fill = new int[size * 3];
+        for (int i = 0; i < numCells; i++) {
+            row[i] = i / size;
+            col[i] = i % size;
+            box[i] = (row[i] / boxSize) * boxSize + col[i] / boxSize;
+            units[row[i]][fill[row[i]]++] = i;
+            units[size + col[i]][fill[size + col[i]]++] = i;
+            units[size * 2 + box[i]][fill[size * 2 + box[i]]++] = i;
+        }
+        cells = new int[numCells];
+        rows = new int[size];
+        cols = new int[size];
+        boxes = new int[size];
+        trail = new int[numCells];
+        orders = new int[numCells][size];
+    }
+
+    /**
+     * Set the cancellation that searches should watch.
+     *
+     * @param cancel the cancellation to poll
+     */
+    public final void setCancellation(final Cancellation cancel) {
+        cancellation = cancel;
+    }
+
+    /**
+     * Allow searches to visit only so many more nodes in total.
+     *
+     * @param budget number of nodes, or Long.MAX_VALUE for no limit
+     */
+    public final void setBudget(final long budget) {
+        if (budget == Long.MAX_VALUE) {
+            nodeLimit = Long.MAX_VALUE;
+        } else {
+            nodeLimit = nodes + budget;
+        }
+    }
+
+    /**
+     * The number of search nodes visited by this solver so far.
+     *
+     * @return total nodes visited
+     */
+    public final long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Count the solutions of a grid up to a limit.
+     *
+     * The grid is not modified.
+     *
+     * @param grid the grid to check
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions found
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    public final int countSolutions(final Grid grid, final int limit)
+        throws TimeoutException {
+        if (!load(grid)) {
+            return 0;
+        }
+        rng = null;
+        int count = count(limit);
+        if (stopped) {
+            throw new TimeoutException();
+        }
+        return count;
+    }
+
+    /**
+     * Solve a grid in place, trying values in a random order.
+     *
+     * Solving an empty grid fills it with a random solution.
+     *
+     * @param grid the grid to solve
+     * @param random order in which to try values
+     * @return true if a solution was found
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    public final boolean solve(final Grid grid, final Random random)
+        throws TimeoutException {
+        if (!load(grid)) {
+            return false;
+        }
+        rng = random;
+        boolean solved = count(1) > 0;
+        rng = null;
+        if (stopped) {
+            throw new TimeoutException();
+        }
+        if (solved) {
+            for (int i = 0; i < numCells; i++) {
+                if (grid.get(col[i], row[i]) == 0) {
+                    grid.set(col[i], row[i],
+                             Integer.numberOfTrailingZeros(cells[i]));
+                }
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Load a grid into the search state.
+     *
+     * @param grid the grid
+     * @return false if two values conflict
+     */
+    private boolean load(final Grid grid) {
+        if (grid.size() != size) {
+            throw new IllegalArgumentException("Wrong grid size.");
+        }
+        for (int i = 0; i < size; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        top = 0;
+        depth = 0;
+        stopped = false;
+        for (int i = 0; i < numCells; i++) {
+            int val = grid.get(col[i], row[i]);
+            int bit = val > 0 ? 1 << val : 0;
+            cells[i] = 0;
+            if (bit != 0) {
+                if (((rows[row[i]] | cols[col[i]] | boxes[box[i]]) & bit)
+                        != 0) {
+                    return false;
+                }
+                place(i, bit);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count solutions up to a limit.
+     *
+     * When solving in random order, the search stops at the first
+     * solution and leaves it in place. Otherwise the state is left
+     * unchanged. The search unwinds without a result, setting stopped,
+     * if it is cancelled or runs out of budget.
+     *
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions found
+     */
+    private int count(final int limit) {
+        nodes++;
+        if (nodes > nodeLimit
+                || ((nodes & POLL_MASK) == 0 && cancellation.isCancelled())) {
+            stopped = true;
+            return 0;
+        }
+        int mark = top;
+        if (!propagate()) {
+            return 0;
+        }
+        int i = best;
+        if (i < 0) {
+            /* Grid is full i.e. solved. */
+            if (rng == null) {
+                undo(mark);
+            }
+            return 1;
+        }
+
+        int possible = all & ~(rows[row[i]] | cols[col[i]] | boxes[box[i]]);
+        int[] order = orders[depth];
+        int n = 0;
+        while (possible != 0) {
+            int bit = possible & -possible;
+            possible ^= bit;
+            order[n++] = bit;
+        }
+        if (rng != null) {
+            for (int k = n - 1; k > 0; k--) {
+                int j = rng.nextInt(k + 1);
+                int tmp = order[k];
+                order[k] = order[j];
+                order[j] = tmp;
+            }
+        }
+        int total = 0;
+        depth++;
+        for (int k = 0; k < n && total < limit && !stopped; k++) {
+            place(i, order[k]);
+            total += count(limit - total);
+            if (total > 0 && rng != null) {
+                depth--;
+                return total;
+            }
+            remove(i);
+        }
+        depth--;
+        undo(mark);
+        return total;
+    }
+
+    /**
+     * Fill in naked and hidden singles until none remain.
+     *
+     * Afterwards best holds the empty cell with the fewest candidates,
+     * or -1 if the grid is full. On a contradiction the cells filled by
+     * this call are emptied again.
+     *
+     * @return false if some cell or value has no place left
+     */
+    private boolean propagate() {
+        int mark = top;
+        while (true) {
+            boolean changed = false;
+            best = -1;
+            int bestCount = size + 1;
+            for (int i = 0; i < numCells; i++) {
+                if (cells[i] == 0) {
+                    int possible = all
+                        & ~(rows[row[i]] | cols[col[i]] | boxes[box[i]]);
+                    int n = Integer.bitCount(possible);
+                    if (n == 0) {
+                        undo(mark);
+                        return false;
+                    } else if (n == 1) {
+                        place(i, possible);
+                        trail[top++] = i;
+                        changed = true;
+                    } else if (n < bestCount) {
+                        best = i;
+                        bestCount = n;
+                    }
+                }
+            }
+            if (changed) {
+                continue;
+            }
+            if (best < 0) {
+                return true;
+            }
+            int result = hiddenSingles();
+            if (result < 0) {
+                undo(mark);
+                return false;
+            } else if (result == 0) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Fill in every value that has only one place left in a unit.
+     *
+     * @return number of cells filled, or -1 on a contradiction
+     */
+    private int hiddenSingles() {
+        int placed = 0;
+        for (int u = 0; u < units.length; u++) {
+            int[] unit = units[u];
+            int once = 0;
+            int twice = 0;
+            int used = 0;
+            for (int k = 0; k < size; k++) {
+                int i = unit[k];
+                if (cells[i] == 0) {
+                    int possible = all
+                        & ~(rows[row[i]] | cols[col[i]] | boxes[box[i]]);
+                    twice |= once & possible;
+                    once |= possible;
+                } else {
+                    used |= cells[i];
+                }
+            }
+            if ((once | used) != all) {
+                return -1;
+            }
+            int only = once & ~twice;
+            while (only != 0) {
+                int bit = only & -only;
+                only ^= bit;
+                for (int k = 0; k < size; k++) {
+                    int i = unit[k];
+                    if (cells[i] == 0 && ((rows[row[i]] | cols[col[i]]
+                                           | boxes[box[i]]) & bit) == 0) {
+                        place(i, bit);
+                        trail[top++] = i;
+                        placed++;
+                        break;
+                    }
+                }
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * Empty the cells filled by propagation since a mark.
+     *
+     * @param mark trail size to return to
+     */
+    private void undo(final int mark) {
+        while (top > mark) {
+            remove(trail[--top]);
+        }
+    }
+
+    /**
+     * Fill a cell.
+     *
+     * @param i flat cell index
+     * @param bit mask bit of the value
+     */
+    private void place(final int i, final int bit) {
+        cells[i] = bit;
+        rows[row[i]] |= bit;
+        cols[col[i]] |= bit;
+        boxes[box[i]] |= bit;
+    }
+
+    /**
+     * Empty a cell.
+     *
+     * @param i flat cell index
+     */
+    private void remove(final int i) {
+        int bit = ~cells[i];
+        cells[i] = 0;
+        rows[row[i]] &= bit;
+        cols[col[i]] &= bit;
+        boxes[box[i]] &= bit;
+    }
+}
@@ -0,0 +1,63 @@
+package com.nullprogram.sudoku;
+
+/**
+ * The next move on a board that logic alone can justify: a value for
+ * a cell, and the hardest technique needed to find it.
+ */
+public final class Hint {
+
+    private final Position position;
+    private final byte value;
+    private final Technique technique;
+
+    /**
+     * Create a hint.
+     *
+     * @param position the cell to fill
+     * @param value the value it must hold
+     * @param technique the hardest technique the deduction needed
+     */
+    public Hint(final Position position, final byte value,
+                final Technique technique) {
+        this.position = position;
+        this.value = value;
+        this.technique = technique;
+    }
+
+    /**
+     * The cell to fill.
+     *
+     * @return the cell's position
+     */
+    public Position getPosition() {
+        return position;
+    }
+
+    /**
+     * The value the cell must hold.
+     *
+     * @return a value, 1 through 9
+     */
+    public byte getValue() {
+        return value;
+    }
+
+    /**
+     * The hardest technique the deduction needed.
+     *
+     * Techniques that only remove candidates are needed before some
+     * cell can be filled, so this may be harder than the single that
+     * finally fills it.
+     *
+     * @return the technique
+     */
+    public Technique getTechnique() {
+        return technique;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        return technique + ": " + value + " at (" + position.getX() + ", "
+            + position.getY() + ")";
+    }
+}
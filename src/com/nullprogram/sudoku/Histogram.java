@@ -0,0 +1,143 @@
+package com.nullprogram.sudoku;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free histogram of non-negative values, such as latencies in
+ * nanoseconds.
+ *
+ * Each power of two is split into four buckets, so quantiles are
+ * accurate to within 25%. Recording is a few striped counter updates
+ * and never blocks, so it can be done on every operation.
+ */
+public final class Histogram {
+
+    /* Each power of two is split into 1 << SUB_BITS buckets. */
+    private static final int SUB_BITS = 2;
+    private static final int SUB = 1 << SUB_BITS;
+
+    private final LongAdder[] buckets = new LongAdder[64 << SUB_BITS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Create an empty histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value the value, negative values count as 0
+     */
+    public void record(final long value) {
+        long v = Math.max(0, value);
+        buckets[index(v)].increment();
+        count.increment();
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * The number of values recorded.
+     *
+     * @return number of values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * The mean of the values recorded.
+     *
+     * @return the mean, 0 if empty
+     */
+    public long getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * The largest value recorded.
+     *
+     * @return the maximum, 0 if empty
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a quantile of the values recorded.
+     *
+     * @param q the quantile, from 0 to 1
+     * @return upper bound of the bucket holding the quantile, 0 if empty
+     */
+    public long quantile(final double q) {
+        long[] counts = new long[buckets.length];
+        long n = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            n += counts[i];
+        }
+        long target = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(upper(i), max.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forget every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i].reset();
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * The bucket holding a value.
+     *
+     * @param v a non-negative value
+     * @return bucket index
+     */
+    private static int index(final long v) {
+        if (v < SUB) {
+            return (int) v;
+        }
+        int log = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (log - SUB_BITS)) & (SUB - 1);
+        return ((log - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    /**
+     * The largest value held by a bucket.
+     *
+     * @param i bucket index
+     * @return upper bound of the bucket
+     */
+    private static long upper(final int i) {
+        if (i < SUB) {
+            return i;
+        }
+        int log = (i >> SUB_BITS) + SUB_BITS - 1;
+        long sub = i & (SUB - 1);
+        return ((SUB + sub + 1) << (log - SUB_BITS)) - 1;
+    }
+}
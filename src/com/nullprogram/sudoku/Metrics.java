@@ -0,0 +1,337 @@
+package com.nullprogram.sudoku;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for puzzle generation and solving.
+ *
+ * Every counter is striped, so recording never takes a lock and is
+ * cheap enough to leave on under load. Generators and solvers record
+ * into the {@link #global()} instance unless given another. The
+ * numbers can be read programmatically as a {@link #snapshot()} or
+ * over JMX once registered with {@link #register(String)}.
+ */
+public class Metrics implements MetricsMXBean {
+
+    /** Name the global instance is registered under. */
+    public static final String NAME = "com.nullprogram.sudoku:type=Metrics";
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    private final LongAdder puzzles = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder eliminationPasses = new LongAdder();
+    private final LongAdder eliminationNodes = new LongAdder();
+    private final LongAdder eliminationSkips = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder checkNodes = new LongAdder();
+    private final LongAdder solves = new LongAdder();
+    private final LongAdder solveNodes = new LongAdder();
+
+    /* Generation latency in nanoseconds by number of givens. */
+    private final ConcurrentMap<Integer, Histogram> latencies =
+        new ConcurrentHashMap<Integer, Histogram>();
+
+    /* Attempts needed for each puzzle by number of givens. */
+    private final ConcurrentMap<Integer, Histogram> attemptCounts =
+        new ConcurrentHashMap<Integer, Histogram>();
+
+    /**
+     * The metrics shared by the whole process.
+     *
+     * @return the global metrics
+     */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Register these metrics with the platform MBean server.
+     *
+     * Registering a name that is already taken does nothing.
+     *
+     * @param name the JMX object name, such as {@link #NAME}
+     */
+    public final void register(final String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(name));
+        } catch (InstanceAlreadyExistsException e) {
+            /* Already registered. */
+            return;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public final long getPuzzles() {
+        return puzzles.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getAttempts() {
+        return attempts.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getRestarts() {
+        return restarts.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final double getRestartsPerPuzzle() {
+        long n = puzzles.sum();
+        return n == 0 ? 0 : (double) restarts.sum() / n;
+    }
+
+    /** {@inheritDoc} */
+    public final long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getEliminationPasses() {
+        return eliminationPasses.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getEliminationNodes() {
+        return eliminationNodes.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getEliminationSkips() {
+        return eliminationSkips.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getUniquenessChecks() {
+        return checks.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getCheckNodes() {
+        return checkNodes.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getSolves() {
+        return solves.sum();
+    }
+
+    /** {@inheritDoc} */
+    public final long getSolveNodes() {
+        return solveNodes.sum();
+    }
+
+    /**
+     * The generation latency histogram for a number of givens.
+     *
+     * @param givens number of givens
+     * @return latencies in nanoseconds
+     */
+    public final Histogram latency(final int givens) {
+        return histogram(latencies, givens);
+    }
+
+    /**
+     * The histogram of attempts per puzzle for a number of givens.
+     *
+     * @param givens number of givens
+     * @return attempts needed for each puzzle
+     */
+    public final Histogram attempts(final int givens) {
+        return histogram(attemptCounts, givens);
+    }
+
+    /**
+     * Find or create the histogram for a number of givens.
+     *
+     * @param map histograms by number of givens
+     * @param givens number of givens
+     * @return the histogram
+     */
+    private static Histogram histogram(
+        final ConcurrentMap<Integer, Histogram> map, final int givens) {
+        Histogram h = map.get(givens);
+        if (h == null) {
+            Histogram created = new Histogram();
+            h = map.putIfAbsent(givens, created);
+            if (h == null) {
+                h = created;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Every counter and latency statistic by name.
+     *
+     * Latencies are listed as <code>latency.GIVENS.STAT</code> in
+     * nanoseconds, where STAT is count, mean, p50, p99 or max, and
+     * attempts per puzzle likewise as <code>attempts.GIVENS.STAT</code>.
+     *
+     * @return the current values, sorted by name
+     */
+    public final SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> map = new TreeMap<String, Long>();
+        map.put("puzzles", getPuzzles());
+        map.put("attempts", getAttempts());
+        map.put("restarts", getRestarts());
+        map.put("timeouts", getTimeouts());
+        map.put("eliminationPasses", getEliminationPasses());
+        map.put("eliminationNodes", getEliminationNodes());
+        map.put("eliminationSkips", getEliminationSkips());
+        map.put("uniquenessChecks", getUniquenessChecks());
+        map.put("checkNodes", getCheckNodes());
+        map.put("solves", getSolves());
+        map.put("solveNodes", getSolveNodes());
+        put(map, "latency.", latencies);
+        put(map, "attempts.", attemptCounts);
+        return map;
+    }
+
+    /**
+     * Add the statistics of some histograms to a snapshot.
+     *
+     * @param map the snapshot
+     * @param name prefix of the statistics' names
+     * @param histograms histograms by number of givens
+     */
+    private static void put(final Map<String, Long> map, final String name,
+                            final Map<Integer, Histogram> histograms) {
+        for (Map.Entry<Integer, Histogram> e : histograms.entrySet()) {
+            String prefix = name + e.getKey() + ".";
+            Histogram h = e.getValue();
+            map.put(prefix + "count", h.getCount());
+            map.put(prefix + "mean", h.getMean());
+            map.put(prefix + "p50", h.quantile(0.50));
+            map.put(prefix + "p99", h.quantile(0.99));
+            map.put(prefix + "max", h.getMax());
+        }
+    }
+
+    /** {@inheritDoc} */
+    public final Map<String, Long> getSnapshot() {
+        return snapshot();
+    }
+
+    /** {@inheritDoc} */
+    public final void reset() {
+        puzzles.reset();
+        attempts.reset();
+        restarts.reset();
+        timeouts.reset();
+        eliminationPasses.reset();
+        eliminationNodes.reset();
+        eliminationSkips.reset();
+        checks.reset();
+        checkNodes.reset();
+        solves.reset();
+        solveNodes.reset();
+        for (Histogram h : latencies.values()) {
+            h.reset();
+        }
+        for (Histogram h : attemptCounts.values()) {
+            h.reset();
+        }
+    }
+
+    /**
+     * Record a generated puzzle.
+     *
+     * @param givens number of givens asked for
+     * @param nanos time taken in nanoseconds
+     */
+    final void generated(final int givens, final long nanos) {
+        puzzles.increment();
+        latency(givens).record(nanos);
+    }
+
+    /**
+     * Record the attempts a puzzle took.
+     *
+     * @param givens number of givens asked for
+     * @param count number of attempts
+     */
+    final void attempts(final int givens, final long count) {
+        attempts(givens).record(count);
+    }
+
+    /**
+     * Record the start of a generation attempt.
+     */
+    final void attempt() {
+        attempts.increment();
+    }
+
+    /**
+     * Record an abandoned generation attempt.
+     */
+    final void restart() {
+        restarts.increment();
+    }
+
+    /**
+     * Record an attempt stopped by its budget or cancellation.
+     */
+    final void timeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * Record an elimination pass.
+     */
+    final void eliminationPass() {
+        eliminationPasses.increment();
+    }
+
+    /**
+     * Record search nodes spent checking eliminations.
+     *
+     * @param nodes search nodes visited
+     */
+    final void eliminationNodes(final long nodes) {
+        eliminationNodes.add(nodes);
+    }
+
+    /**
+     * Record a removal rejected without a search.
+     */
+    final void eliminationSkip() {
+        eliminationSkips.increment();
+    }
+
+    /**
+     * Record the work done by a uniqueness checker.
+     *
+     * @param count number of checks
+     * @param nodes search nodes visited
+     */
+    final void checked(final long count, final long nodes) {
+        checks.add(count);
+        checkNodes.add(nodes);
+    }
+
+    /**
+     * Record a solver search.
+     *
+     * @param nodes search nodes visited
+     */
+    final void solved(final long nodes) {
+        solves.increment();
+        solveNodes.add(nodes);
+    }
+}
@@ -0,0 +1,108 @@
+package com.nullprogram.sudoku;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link Metrics}, as seen over JMX.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * The number of puzzles generated.
+     *
+     * @return puzzle count
+     */
+    long getPuzzles();
+
+    /**
+     * The number of generation attempts started.
+     *
+     * @return attempt count
+     */
+    long getAttempts();
+
+    /**
+     * The number of attempts abandoned and started over.
+     *
+     * @return restart count
+     */
+    long getRestarts();
+
+    /**
+     * The average number of restarts for each puzzle generated.
+     *
+     * @return restarts per puzzle
+     */
+    double getRestartsPerPuzzle();
+
+    /**
+     * The number of attempts stopped by their node budget or by
+     * cancellation.
+     *
+     * @return timeout count
+     */
+    long getTimeouts();
+
+    /**
+     * The number of times givens were eliminated from a puzzle.
+     *
+     * @return elimination pass count
+     */
+    long getEliminationPasses();
+
+    /**
+     * The search nodes visited checking eliminations, a part of
+     * {@link #getCheckNodes()}.
+     *
+     * @return node count
+     */
+    long getEliminationNodes();
+
+    /**
+     * The number of removals rejected during elimination without a
+     * search, because they left a known unavoidable set empty.
+     *
+     * @return skip count
+     */
+    long getEliminationSkips();
+
+    /**
+     * The number of uniqueness checks run.
+     *
+     * @return check count
+     */
+    long getUniquenessChecks();
+
+    /**
+     * The search nodes visited by uniqueness checks.
+     *
+     * @return node count
+     */
+    long getCheckNodes();
+
+    /**
+     * The number of boards solved or counted by the backtracking solver.
+     *
+     * @return solve count
+     */
+    long getSolves();
+
+    /**
+     * The search nodes visited by the backtracking solver.
+     *
+     * @return node count
+     */
+    long getSolveNodes();
+
+    /**
+     * Every counter and latency statistic by name.
+     *
+     * @return the current values
+     */
+    Map<String, Long> getSnapshot();
+
+    /**
+     * Reset every counter and histogram to zero.
+     */
+    void reset();
+}
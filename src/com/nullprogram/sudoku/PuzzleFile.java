@@ -0,0 +1,453 @@
+package com.nullprogram.sudoku;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A compact binary file of puzzles with random access by number and
+ * by difficulty bucket.
+ *
+ * Each puzzle is packed into a fixed 41-byte record, two cells per
+ * byte, four bits per cell. The file is a 32-byte header, the records
+ * in the order they were written, and then an index listing the
+ * record numbers in each bucket. A bucket is any int, the number of
+ * givens by default. Files are read through memory mapping, in
+ * segments so that no mapping exceeds 1GB, so opening even a very
+ * large file is immediate and records are decoded straight from the
+ * page cache.
+ *
+ * <pre>
+ * header:  int magic, int version, int record size, int bucket count,
+ *          long record count, long index offset
+ * records: 41 bytes each
+ * index:   per bucket: int key, int count, count x int record number
+ * </pre>
+ */
+public final class PuzzleFile implements Closeable {
+
+    /** The size of one packed puzzle in bytes. */
+    public static final int RECORD_SIZE = 41;
+
+    private static final int MAGIC = 0x53444b31;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    /* Records per mapped segment, keeping each mapping under 1GB. */
+    private static final int SEGMENT_RECORDS = (1 << 30) / RECORD_SIZE;
+
+    /* Bytes per mapped index segment, a multiple of the int size. */
+    private static final int INDEX_SHIFT = 30;
+    private static final long INDEX_MASK = (1L << INDEX_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final MappedByteBuffer[] index;
+    private final long count;
+
+    /* Each bucket's first entry in the index, and its size. */
+    private final Map<Integer, long[]> buckets =
+        new TreeMap<Integer, long[]>();
+
+    /**
+     * Open a puzzle file for reading.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be read or is not valid
+     */
+    public PuzzleFile(final Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY,
+                                        0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.getInt() != RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Not a puzzle file: " + path);
+        }
+        int bucketCount = header.getInt();
+        count = header.getLong();
+        long indexOffset = header.getLong();
+
+        int n = (int) ((count + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+        segments = new MappedByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            long first = (long) i * SEGMENT_RECORDS;
+            long records = Math.min(SEGMENT_RECORDS, count - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                      HEADER_SIZE + first * RECORD_SIZE,
+                                      records * RECORD_SIZE);
+        }
+        long indexSize = channel.size() - indexOffset;
+        index = new MappedByteBuffer[(int) ((indexSize + INDEX_MASK)
+                                            >>> INDEX_SHIFT)];
+        for (int i = 0; i < index.length; i++) {
+            long first = (long) i << INDEX_SHIFT;
+            index[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                   indexOffset + first,
+                                   Math.min(INDEX_MASK + 1,
+                                            indexSize - first));
+        }
+        long pos = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            int key = indexInt(pos);
+            int size = indexInt(pos + 4);
+            buckets.put(key, new long[] {pos + 8, size});
+            pos += 8 + size * 4L;
+        }
+    }
+
+    /**
+     * Import or export puzzles from the command line.
+     *
+     * <pre>
+     * PuzzleFile import puzzles.txt puzzles.sdk
+     * PuzzleFile export puzzles.sdk
+     * </pre>
+     *
+     * Text puzzles are in the 81-character format, one per line, and
+     * exported text is written to standard output.
+     *
+     * @param args command line arguments
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import")) {
+            BufferedReader in = Files.newBufferedReader(
+                Paths.get(args[1]), StandardCharsets.US_ASCII);
+            long n = importText(in, Paths.get(args[2]));
+            in.close();
+            System.err.println(n + " puzzles imported");
+        } else if (args.length == 2 && args[0].equals("export")) {
+            PuzzleFile file = new PuzzleFile(Paths.get(args[1]));
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.US_ASCII),
+                1 << 16);
+            file.exportText(out);
+            out.flush();
+            file.close();
+        } else {
+            System.err.println("usage: PuzzleFile import text file");
+            System.err.println("       PuzzleFile export file");
+        }
+    }
+
+    /**
+     * Write puzzles read as text into a new puzzle file.
+     *
+     * Blank lines and lines starting with '#' are skipped.
+     *
+     * @param in puzzles in the 81-character format, one per line
+     * @param path the file to create
+     * @return number of puzzles written
+     * @throws IOException if reading or writing fails
+     */
+    public static long importText(final BufferedReader in, final Path path)
+        throws IOException {
+        Builder out = new Builder(path);
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#")) {
+                    out.write(Board.parse(line.split("[\\s,]", 2)[0]));
+                }
+            }
+            return out.count;
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Write every puzzle as text in record order.
+     *
+     * @param out destination for the 81-character lines
+     * @throws IOException if writing fails
+     */
+    public void exportText(final Writer out) throws IOException {
+        for (long i = 0; i < count; i++) {
+            out.write(get(i).toString());
+            out.write('\n');
+        }
+    }
+
+    /**
+     * The number of puzzles in the file.
+     *
+     * @return puzzle count
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Read a puzzle by its record number.
+     *
+     * @param n record number, from 0
+     * @return the puzzle
+     */
+    public Board get(final long n) {
+        Board puzzle = new Board();
+        get(n, puzzle);
+        return puzzle;
+    }
+
+    /**
+     * Read a puzzle by its record number into an existing board.
+     *
+     * @param n record number, from 0
+     * @param puzzle destination board
+     */
+    public void get(final long n, final Board puzzle) {
+        if (n < 0 || n >= count) {
+            throw new IndexOutOfBoundsException("No puzzle " + n);
+        }
+        ByteBuffer segment = segments[(int) (n / SEGMENT_RECORDS)];
+        unpack(segment, (int) (n % SEGMENT_RECORDS) * RECORD_SIZE, puzzle);
+    }
+
+    /**
+     * The buckets present in the file, in ascending order.
+     *
+     * @return bucket keys
+     */
+    public int[] buckets() {
+        int[] keys = new int[buckets.size()];
+        int i = 0;
+        for (int key : buckets.keySet()) {
+            keys[i++] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * The number of puzzles in a bucket.
+     *
+     * @param bucket bucket key
+     * @return puzzle count, 0 if there is no such bucket
+     */
+    public int size(final int bucket) {
+        long[] entry = buckets.get(bucket);
+        return entry == null ? 0 : (int) entry[1];
+    }
+
+    /**
+     * Read a puzzle from a bucket.
+     *
+     * @param bucket bucket key
+     * @param i position within the bucket, from 0
+     * @return the puzzle
+     */
+    public Board get(final int bucket, final int i) {
+        long[] entry = buckets.get(bucket);
+        if (entry == null || i < 0 || i >= entry[1]) {
+            throw new IndexOutOfBoundsException("No puzzle " + i
+                                                + " in bucket " + bucket);
+        }
+        return get(indexInt(entry[0] + i * 4L) & 0xffffffffL);
+    }
+
+    /**
+     * Read an int from the index.
+     *
+     * Index entries are ints and segments hold a whole number of them,
+     * so no entry straddles two segments.
+     *
+     * @param pos byte position within the index
+     * @return the int at that position
+     */
+    private int indexInt(final long pos) {
+        return index[(int) (pos >>> INDEX_SHIFT)]
+            .getInt((int) (pos & INDEX_MASK));
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Pack a puzzle into a record.
+     *
+     * @param puzzle the puzzle
+     * @param record destination, at least {@link #RECORD_SIZE} bytes
+     */
+    public static void pack(final Board puzzle, final byte[] record) {
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            int a = 2 * i;
+            int b = 2 * i + 1;
+            int hi = puzzle.get(a % 9, a / 9);
+            int lo = b < 81 ? puzzle.get(b % 9, b / 9) : 0;
+            record[i] = (byte) (hi << 4 | lo);
+        }
+    }
+
+    /**
+     * Unpack a puzzle from a record.
+     *
+     * @param buf buffer holding the record
+     * @param offset position of the record in the buffer
+     * @return the puzzle
+     */
+    public static Board unpack(final ByteBuffer buf, final int offset) {
+        Board puzzle = new Board();
+        unpack(buf, offset, puzzle);
+        return puzzle;
+    }
+
+    /**
+     * Unpack a puzzle from a record into an existing board.
+     *
+     * @param buf buffer holding the record
+     * @param offset position of the record in the buffer
+     * @param puzzle destination board, cleared first
+     */
+    public static void unpack(final ByteBuffer buf, final int offset,
+                              final Board puzzle) {
+        puzzle.clear();
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            int packed = buf.get(offset + i);
+            if (packed != 0) {
+                int hi = (packed >> 4) & 0xF;
+                int lo = packed & 0xF;
+                if (hi != 0) {
+                    puzzle.set((2 * i) % 9, (2 * i) / 9, (byte) hi);
+                }
+                if (lo != 0) {
+                    puzzle.set((2 * i + 1) % 9, (2 * i + 1) / 9, (byte) lo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a puzzle file.
+     *
+     * The index is held in memory, four bytes per puzzle, until the
+     * builder is closed, and a file is not readable until then.
+     */
+    public static final class Builder implements Closeable {
+
+        private final Path path;
+        private final DataOutputStream out;
+        private final byte[] record = new byte[RECORD_SIZE];
+        private final Map<Integer, Bucket> buckets =
+            new TreeMap<Integer, Bucket>();
+        private long count;
+
+        /**
+         * Create a new, empty puzzle file.
+         *
+         * @param path the file to create
+         * @throws IOException if the file cannot be created
+         */
+        public Builder(final Path path) throws IOException {
+            this.path = path;
+            out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(path.toFile()), 1 << 16));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        /**
+         * Append a puzzle, bucketed by its number of givens.
+         *
+         * @param puzzle the puzzle
+         * @throws IOException if writing fails
+         */
+        public void write(final Board puzzle) throws IOException {
+            write(puzzle, puzzle.filled());
+        }
+
+        /**
+         * Append a puzzle to a bucket.
+         *
+         * @param puzzle the puzzle
+         * @param bucket bucket key
+         * @throws IOException if writing fails
+         */
+        public void write(final Board puzzle, final int bucket)
+            throws IOException {
+            if (count == 0xffffffffL) {
+                throw new IOException("Puzzle file is full.");
+            }
+            pack(puzzle, record);
+            out.write(record);
+            Bucket b = buckets.get(bucket);
+            if (b == null) {
+                b = new Bucket();
+                buckets.put(bucket, b);
+            }
+            b.add((int) count);
+            count++;
+        }
+
+        /**
+         * Write the index and header, completing the file.
+         *
+         * @throws IOException if writing fails
+         */
+        public void close() throws IOException {
+            long indexOffset = HEADER_SIZE + count * RECORD_SIZE;
+            for (Map.Entry<Integer, Bucket> e : buckets.entrySet()) {
+                Bucket b = e.getValue();
+                out.writeInt(e.getKey());
+                out.writeInt(b.size);
+                for (int i = 0; i < b.size; i++) {
+                    out.writeInt(b.records[i]);
+                }
+            }
+            out.close();
+            RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+            try {
+                file.writeInt(MAGIC);
+                file.writeInt(VERSION);
+                file.writeInt(RECORD_SIZE);
+                file.writeInt(buckets.size());
+                file.writeLong(count);
+                file.writeLong(indexOffset);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * The record numbers of one bucket, while writing.
+     */
+    private static final class Bucket {
+
+        private int[] records = new int[64];
+        private int size;
+
+        /**
+         * Append a record number.
+         *
+         * @param n the record number
+         */
+        private void add(final int n) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            records[size++] = n;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.nullprogram.sudoku;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * A fixed-size set of puzzle keys for removing duplicates from large
+ * streams of puzzles.
+ *
+ * Keys are 64-bit hashes of a puzzle's {@link Canonical} form, so
+ * puzzles that differ only by a symmetry are duplicates. The keys live
+ * in a single open-addressed table of primitive longs, optionally
+ * outside the Java heap, which is allocated up front and never grows.
+ * A direct buffer holds under 2 GB, so an off-heap index is limited
+ * to {@link #MAX_OFF_HEAP} slots. Adding and checking keys is safe
+ * from any thread.
+ */
+public class PuzzleIndex {
+
+    /* Fraction of slots that may be used before the index is full. */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /** Most slots an off-heap table can have, 1 GB of keys. */
+    public static final int MAX_OFF_HEAP = 1 << 27;
+
+    private final LongBuffer table;
+    private final int mask;
+    private final int shift;
+    private final int limit;
+    private int size;
+    private boolean hasZero;
+
+    /**
+     * Create an index on the heap.
+     *
+     * @param expected number of distinct puzzles it must hold
+     */
+    public PuzzleIndex(final int expected) {
+        this(expected, false);
+    }
+
+    /**
+     * Create an index.
+     *
+     * @param expected number of distinct puzzles it must hold
+     * @param offHeap true to keep the table in direct memory
+     * @throws IllegalArgumentException if an off-heap table would need
+     *         more than {@link #MAX_OFF_HEAP} slots
+     */
+    public PuzzleIndex(final int expected, final boolean offHeap) {
+        int wanted = (int) Math.min(1 << 30, expected / LOAD_FACTOR + 16);
+        int slots = Integer.highestOneBit(wanted * 2 - 1);
+        if (offHeap) {
+            long bytes = (long) slots * 8;
+            if (slots > MAX_OFF_HEAP) {
+                throw new IllegalArgumentException(
+                    "Off-heap index of " + expected + " puzzles needs "
+                    + bytes + " bytes, over the direct buffer limit.");
+            }
+            table = ByteBuffer.allocateDirect((int) bytes).asLongBuffer();
+        } else {
+            table = LongBuffer.allocate(slots);
+        }
+        mask = slots - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(slots);
+        limit = (int) (slots * LOAD_FACTOR);
+    }
+
+    /**
+     * Add a puzzle if no equivalent puzzle has been added.
+     *
+     * @param puzzle the puzzle
+     * @return true if the puzzle is new
+     */
+    public final boolean add(final Board puzzle) {
+        return add(Canonical.key(puzzle));
+    }
+
+    /**
+     * Determine if an equivalent puzzle has been added.
+     *
+     * @param puzzle the puzzle
+     * @return true if the puzzle is a duplicate
+     */
+    public final boolean contains(final Board puzzle) {
+        return contains(Canonical.key(puzzle));
+    }
+
+    /**
+     * Add a key.
+     *
+     * @param key the key
+     * @return true if the key is new
+     * @throws IllegalStateException if the index is full
+     */
+    public final synchronized boolean add(final long key) {
+        if (key == 0) {
+            boolean added = !hasZero;
+            hasZero = true;
+            return added;
+        }
+        int i = slot(key);
+        while (true) {
+            long k = table.get(i);
+            if (k == key) {
+                return false;
+            } else if (k == 0) {
+                if (size >= limit) {
+                    throw new IllegalStateException("Puzzle index is full.");
+                }
+                table.put(i, key);
+                size++;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * Determine if a key has been added.
+     *
+     * @param key the key
+     * @return true if present
+     */
+    public final synchronized boolean contains(final long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        int i = slot(key);
+        while (true) {
+            long k = table.get(i);
+            if (k == key) {
+                return true;
+            } else if (k == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /**
+     * The number of keys added.
+     *
+     * @return number of distinct keys
+     */
+    public final synchronized int size() {
+        return size + (hasZero ? 1 : 0);
+    }
+
+    /**
+     * The home slot of a key.
+     *
+     * @param key the key
+     * @return slot index
+     */
+    private int slot(final long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+}
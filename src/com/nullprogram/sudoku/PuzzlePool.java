@@ -0,0 +1,305 @@
+package com.nullprogram.sudoku;
+
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps puzzles ready ahead of time so a new game needs no waiting.
+ *
+ * There is one bounded pool for each difficulty (number of givens).
+ * While running, a low priority background thread generates puzzles
+ * for whichever pool is emptiest until every pool is at capacity, and
+ * then sleeps until a puzzle is taken. Taking a puzzle is safe from
+ * any thread, and takes on different threads do not contend on the
+ * statistics counters.
+ */
+public class PuzzlePool {
+
+    /** Default number of puzzles kept for each difficulty. */
+    public static final int CAPACITY = 4;
+
+    private final Generator generator;
+    private final Map<Integer, BlockingDeque<Board>> pools =
+        new HashMap<Integer, BlockingDeque<Board>>();
+    private volatile int capacity;
+
+    private final Object lock = new Object();
+    private Thread worker;
+    private Cancellation cancel;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder refillNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a pool for the standard difficulties.
+     */
+    public PuzzlePool() {
+        this(new Generator(), CAPACITY,
+             Generator.EASY, Generator.MEDIUM, Generator.HARD);
+    }
+
+    /**
+     * Create a pool.
+     *
+     * @param generator the generator to fill the pools with
+     * @param capacity puzzles to keep for each difficulty
+     * @param difficulties numbers of givens to keep puzzles for
+     * @throws IllegalArgumentException if a difficulty cannot be
+     *         generated
+     */
+    public PuzzlePool(final Generator generator, final int capacity,
+                      final int... difficulties) {
+        this.generator = generator;
+        this.capacity = capacity;
+        for (int givens : difficulties) {
+            Generator.checkGoal(givens);
+            pools.put(givens, new LinkedBlockingDeque<Board>());
+        }
+    }
+
+    /**
+     * Start the background refill thread, if it is not running.
+     */
+    public final void start() {
+        synchronized (lock) {
+            if (worker != null) {
+                return;
+            }
+            cancel = new Cancellation();
+            worker = new Thread(new Refill(cancel), "PuzzlePool");
+            worker.setDaemon(true);
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stop the background refill thread, keeping the ready puzzles.
+     */
+    public final void shutdown() {
+        synchronized (lock) {
+            if (worker != null) {
+                cancel.cancel();
+                worker = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Take a ready puzzle without waiting.
+     *
+     * @param givens the puzzle's number of givens
+     * @return a puzzle, or null if none is ready
+     */
+    public final Board poll(final int givens) {
+        BlockingDeque<Board> pool = pools.get(givens);
+        Board puzzle = pool == null ? null : pool.pollFirst();
+        if (puzzle == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+        return puzzle;
+    }
+
+    /**
+     * Take a puzzle, generating one on this thread if none is ready.
+     *
+     * @param givens the puzzle's number of givens
+     * @return a puzzle
+     */
+    public final Board take(final int givens) {
+        Board puzzle = poll(givens);
+        if (puzzle == null) {
+            puzzle = generator.generate(givens);
+        }
+        return puzzle;
+    }
+
+    /**
+     * Take a puzzle, generating one on this thread if none is ready,
+     * unless cancelled first.
+     *
+     * @param givens the puzzle's number of givens
+     * @param cancel polled while generating
+     * @return a puzzle, or null if cancelled before one was found
+     */
+    public final Board take(final int givens, final Cancellation cancel) {
+        Board puzzle = poll(givens);
+        if (puzzle == null) {
+            puzzle = generator.generate(givens, cancel);
+            if (puzzle.filled() != givens) {
+                return null;
+            }
+        }
+        return puzzle;
+    }
+
+    /**
+     * Change the number of puzzles kept for each difficulty.
+     *
+     * If this shrinks the pools, their oldest puzzles are evicted.
+     * Refills are added under the same lock, so a puzzle generated
+     * before the change cannot push a pool back over the new size.
+     *
+     * @param size new capacity
+     */
+    public final void setCapacity(final int size) {
+        synchronized (lock) {
+            capacity = size;
+            for (BlockingDeque<Board> pool : pools.values()) {
+                while (pool.size() > size && pool.pollFirst() != null) {
+                    evictions.increment();
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * The number of puzzles kept for each difficulty.
+     *
+     * @return the capacity
+     */
+    public final int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The number of puzzles ready at a difficulty.
+     *
+     * @param givens the number of givens
+     * @return number of ready puzzles
+     */
+    public final int size(final int givens) {
+        BlockingDeque<Board> pool = pools.get(givens);
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * The number of takes that found a ready puzzle.
+     *
+     * @return hit count
+     */
+    public final long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of takes that found no ready puzzle.
+     *
+     * @return miss count
+     */
+    public final long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of puzzles generated by the background thread.
+     *
+     * @return refill count
+     */
+    public final long getRefills() {
+        return refills.sum();
+    }
+
+    /**
+     * Time the background thread has spent generating.
+     *
+     * Together with {@link #getRefills()} this gives the refill rate.
+     *
+     * @return generation time in nanoseconds
+     */
+    public final long getRefillNanos() {
+        return refillNanos.sum();
+    }
+
+    /**
+     * The number of puzzles thrown away by shrinking the pools, ready
+     * or still being generated at the time.
+     *
+     * @return eviction count
+     */
+    public final long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Find the difficulty whose pool is furthest below capacity.
+     *
+     * @return number of givens, or -1 if every pool is full
+     */
+    private int neediest() {
+        int givens = -1;
+        int smallest = capacity;
+        for (Map.Entry<Integer, BlockingDeque<Board>> e : pools.entrySet()) {
+            int size = e.getValue().size();
+            if (size < smallest) {
+                smallest = size;
+                givens = e.getKey();
+            }
+        }
+        return givens;
+    }
+
+    /**
+     * The background refill loop.
+     */
+    private final class Refill implements Runnable {
+
+        private final Cancellation stop;
+
+        /**
+         * Create the refill loop.
+         *
+         * @param cancel cancelled when the loop should exit
+         */
+        private Refill(final Cancellation cancel) {
+            stop = cancel;
+        }
+
+        /** {@inheritDoc} */
+        public void run() {
+            while (!stop.isCancelled()) {
+                int givens;
+                synchronized (lock) {
+                    while ((givens = neediest()) < 0 && !stop.isCancelled()) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                if (givens < 0) {
+                    return;
+                }
+                long start = System.nanoTime();
+                Board puzzle = generator.generate(givens, stop);
+                refillNanos.add(System.nanoTime() - start);
+                if (puzzle.filled() == givens) {
+                    refills.increment();
+                    BlockingDeque<Board> pool = pools.get(givens);
+                    synchronized (lock) {
+                        /* The capacity may have shrunk meanwhile. */
+                        if (pool.size() < capacity) {
+                            pool.addLast(puzzle);
+                        } else {
+                            evictions.increment();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
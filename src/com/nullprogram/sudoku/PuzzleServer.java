@@ -0,0 +1,625 @@
+package com.nullprogram.sudoku;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A small HTTP service for puzzles, built on the JDK's own server.
+ *
+ * The endpoints are:
+ *
+ * <pre>
+ * GET  /generate?difficulty=easy|medium|hard   puzzle givens solution
+ * POST /solve      puzzle                      solution
+ * POST /validate   puzzle                      solutions unique
+ * POST /hint[?x=X&amp;y=Y]  puzzle                 x y value
+ * POST /hint?mode=step  board                  x y value technique
+ * GET  /stats                                  latency statistics
+ * </pre>
+ *
+ * A puzzle is sent as the 81-character text, or as a JSON object with
+ * the text in its "puzzle" field. Replies are the listed fields
+ * separated by spaces, or a JSON object when the request asks for
+ * <code>format=json</code> or accepts application/json. Solution
+ * counts stop at 2. A hint is for the given cell, or else for the
+ * empty cell with the fewest candidates. A generated puzzle comes
+ * with its solution, so a client can give such hints itself without
+ * asking again. A step hint is the next cell that logic can fill on
+ * the player's board, with the technique that justifies it, found by
+ * a {@link Rater} in a few steps rather than by a search. A board
+ * with a wrong entry has no solution and gets no step hint.
+ *
+ * Requests are handled on a fixed pool of threads, and at most a set
+ * number of them do puzzle work at once. A request that waits too
+ * long for its turn is refused with 503, as is a generate request
+ * that finds no ready puzzle and cannot make one in time. A request
+ * with the wrong method gets 405, and an unexpected failure 500. The
+ * latency of every request is recorded in a {@link Histogram} for its
+ * endpoint.
+ *
+ * Unless set otherwise, the server turns on the JDK server's
+ * <code>sun.net.httpserver.nodelay</code> property, since with
+ * Nagle's algorithm a reply written as headers and then body waits on
+ * the client's delayed acknowledgement, about 40 ms per request.
+ */
+public class PuzzleServer {
+
+    /** Default port to listen on. */
+    public static final int PORT = 8081;
+
+    /* How long a request may wait to be let in before it is refused. */
+    private static final long WAIT_MILLIS = 1000;
+
+    /* How long a generate request may spend making its own puzzle. */
+    private static final long GENERATE_MILLIS = 2000;
+
+    /* Largest request body read. */
+    private static final int MAX_BODY = 4096;
+
+    private static final Pattern PUZZLE =
+        Pattern.compile("\"puzzle\"\\s*:\\s*\"([^\"]*)\"");
+
+    /* Replies are small, so Nagle's algorithm only adds delay. */
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+
+    static {
+        if (System.getProperty(NODELAY) == null) {
+            System.setProperty(NODELAY, "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService pool;
+    private final Semaphore permits;
+    private final PuzzlePool puzzles;
+    private final Solver solver = new DancingLinksSolver();
+
+    /* Each thread gets its own rater for step hints. */
+    private final ThreadLocal<Rater> raters = new ThreadLocal<Rater>() {
+        protected Rater initialValue() {
+            return new Rater();
+        }
+    };
+
+    private final Map<String, Histogram> latencies =
+        new LinkedHashMap<String, Histogram>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Create a server, not yet started.
+     *
+     * @param address address and port to listen on, port 0 for any
+     * @param threads number of threads handling requests
+     * @param limit number of requests doing puzzle work at once
+     * @throws IOException if the address cannot be bound
+     */
+    public PuzzleServer(final InetSocketAddress address, final int threads,
+                        final int limit) throws IOException {
+        server = HttpServer.create(address, 0);
+        pool = Executors.newFixedThreadPool(threads);
+        server.setExecutor(pool);
+        permits = new Semaphore(limit);
+        puzzles = new PuzzlePool();
+        server.createContext("/generate", new Endpoint("generate", "GET") {
+            protected Reply serve(final Map<String, String> query,
+                                  final String body) {
+                int givens = difficulty(query.get("difficulty"));
+                Cancellation cancel = Cancellation.after(GENERATE_MILLIS);
+                Board puzzle = puzzles.take(givens, cancel);
+                if (puzzle == null) {
+                    return new Reply(503).put("error", "busy");
+                }
+                return new Reply(200).put("puzzle", puzzle)
+                    .put("givens", puzzle.filled())
+                    .put("solution", puzzle.getSolution());
+            }
+        });
+        server.createContext("/solve", new Endpoint("solve", "POST") {
+            protected Reply serve(final Map<String, String> query,
+                                  final String body) {
+                Board board = puzzle(body);
+                if (!solver.solve(board)) {
+                    return new Reply(422).put("error", "no solution");
+                }
+                return new Reply(200).put("solution", board);
+            }
+        });
+        server.createContext("/validate", new Endpoint("validate", "POST") {
+            protected Reply serve(final Map<String, String> query,
+                                  final String body) {
+                int count = solver.countSolutions(puzzle(body), 2);
+                return new Reply(200).put("solutions", count)
+                    .put("unique", count == 1);
+            }
+        });
+        server.createContext("/hint", new Endpoint("hint", "POST") {
+            protected Reply serve(final Map<String, String> query,
+                                  final String body) {
+                if ("step".equals(query.get("mode"))) {
+                    return step(puzzle(body));
+                }
+                return hint(puzzle(body), query);
+            }
+        });
+        server.createContext("/stats", new Endpoint("stats", "GET") {
+            protected Reply serve(final Map<String, String> query,
+                                  final String body) {
+                Reply reply = new Reply(200);
+                for (Map.Entry<String, Long> e : snapshot().entrySet()) {
+                    reply.put(e.getKey(), e.getValue());
+                }
+                return reply;
+            }
+        });
+    }
+
+    /**
+     * Run a server from the command line.
+     *
+     * Arguments are <code>[-p port] [-t threads] [-c limit]</code>.
+     *
+     * @param args command line arguments
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(final String[] args) throws IOException {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int port = PORT;
+        int threads = cpus * 4;
+        int limit = cpus;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-p") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-t") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-c") && i + 1 < args.length) {
+                limit = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("usage: PuzzleServer"
+                                   + " [-p port] [-t threads] [-c limit]");
+                return;
+            }
+        }
+        Metrics.global().register(Metrics.NAME);
+        PuzzleServer server =
+            new PuzzleServer(new InetSocketAddress(port), threads, limit);
+        server.start();
+        System.err.printf("listening on port %d%n", server.getPort());
+    }
+
+    /**
+     * Start serving, along with background puzzle generation.
+     */
+    public final void start() {
+        puzzles.start();
+        server.start();
+    }
+
+    /**
+     * Stop serving, waiting up to a second for requests to finish.
+     */
+    public final void stop() {
+        server.stop(1);
+        pool.shutdownNow();
+        puzzles.shutdown();
+    }
+
+    /**
+     * The port the server listens on.
+     *
+     * @return the bound port
+     */
+    public final int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The latency of an endpoint's requests, in nanoseconds.
+     *
+     * @param endpoint endpoint name, such as "solve"
+     * @return the histogram, or null for an unknown endpoint
+     */
+    public final Histogram latency(final String endpoint) {
+        return latencies.get(endpoint);
+    }
+
+    /**
+     * The number of requests refused for waiting too long.
+     *
+     * @return refused requests
+     */
+    public final long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Every statistic by name.
+     *
+     * Latencies are listed as <code>ENDPOINT.STAT</code> in
+     * nanoseconds, where STAT is count, mean, p50, p99 or max.
+     *
+     * @return statistics, sorted by name
+     */
+    public final SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> map = new TreeMap<String, Long>();
+        for (Map.Entry<String, Histogram> e : latencies.entrySet()) {
+            String prefix = e.getKey() + ".";
+            Histogram h = e.getValue();
+            map.put(prefix + "count", h.getCount());
+            map.put(prefix + "mean", h.getMean());
+            map.put(prefix + "p50", h.quantile(0.50));
+            map.put(prefix + "p99", h.quantile(0.99));
+            map.put(prefix + "max", h.getMax());
+        }
+        map.put("rejected", getRejected());
+        return map;
+    }
+
+    /**
+     * Find the solution's value for one empty cell of a puzzle.
+     *
+     * @param board the puzzle as it stands
+     * @param query may name the cell as x and y
+     * @return the cell and its value
+     */
+    private Reply hint(final Board board, final Map<String, String> query) {
+        int x = -1;
+        int y = -1;
+        if (query.containsKey("x") || query.containsKey("y")) {
+            x = coordinate(query.get("x"));
+            y = coordinate(query.get("y"));
+        } else {
+            int fewest = 10;
+            for (int i = 0; i < 81; i++) {
+                int n = board.numCandidates(i % 9, i / 9);
+                if (board.get(i % 9, i / 9) == 0 && n < fewest) {
+                    x = i % 9;
+                    y = i / 9;
+                    fewest = n;
+                }
+            }
+            if (x < 0) {
+                return new Reply(422).put("error", "puzzle is complete");
+            }
+        }
+        Board solution = new Board(board);
+        if (!solver.solve(solution)) {
+            return new Reply(422).put("error", "no solution");
+        }
+        return new Reply(200).put("x", x).put("y", y)
+            .put("value", solution.get(x, y));
+    }
+
+    /**
+     * Find the next cell that logic can fill on a board.
+     *
+     * A rater's hint is only sound on a board whose entries all agree
+     * with the solution. The server does not know the solution, but a
+     * wrong entry on a puzzle with a unique solution leaves the board
+     * with no solution at all, so such boards are refused.
+     *
+     * @param board the player's board
+     * @return the cell, its value and the technique needed
+     */
+    private Reply step(final Board board) {
+        if (solver.countSolutions(board, 1) == 0) {
+            return new Reply(422).put("error", "no solution");
+        }
+        Hint hint = raters.get().hint(board);
+        if (hint == null) {
+            return new Reply(422).put("error", "no logical step");
+        }
+        return new Reply(200).put("x", hint.getPosition().getX())
+            .put("y", hint.getPosition().getY())
+            .put("value", hint.getValue())
+            .put("technique", hint.getTechnique().name());
+    }
+
+    /**
+     * Read the puzzle from a request body.
+     *
+     * @param body the body, as text or JSON
+     * @return the puzzle
+     * @throws IllegalArgumentException if there is no valid puzzle
+     */
+    private static Board puzzle(final String body) {
+        String text = body.trim();
+        if (text.startsWith("{")) {
+            Matcher m = PUZZLE.matcher(text);
+            if (!m.find()) {
+                throw new IllegalArgumentException("No puzzle field.");
+            }
+            text = m.group(1);
+        }
+        return Board.parse(text);
+    }
+
+    /**
+     * Map a difficulty name to its number of givens.
+     *
+     * @param name easy, medium or hard, or null for easy
+     * @return number of givens
+     * @throws IllegalArgumentException for any other name
+     */
+    private static int difficulty(final String name) {
+        if (name == null || name.equals("easy")) {
+            return Generator.EASY;
+        } else if (name.equals("medium")) {
+            return Generator.MEDIUM;
+        } else if (name.equals("hard")) {
+            return Generator.HARD;
+        }
+        throw new IllegalArgumentException("Bad difficulty: " + name);
+    }
+
+    /**
+     * Parse a cell coordinate.
+     *
+     * @param text the coordinate, 0 through 8
+     * @return the coordinate
+     * @throws IllegalArgumentException if it is missing or out of range
+     */
+    private static int coordinate(final String text) {
+        int c;
+        try {
+            c = Integer.parseInt(String.valueOf(text));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad coordinate: " + text);
+        }
+        if (c < 0 || c > 8) {
+            throw new IllegalArgumentException("Bad coordinate: " + text);
+        }
+        return c;
+    }
+
+    /**
+     * Split a URI query into its parameters.
+     *
+     * @param query the raw query, may be null
+     * @return parameters by name
+     */
+    private static Map<String, String> parameters(final String query) {
+        Map<String, String> map = new HashMap<String, String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = eq < 0 ? pair : pair.substring(0, eq);
+                String value = eq < 0 ? "" : pair.substring(eq + 1);
+                map.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Read a request body, up to MAX_BODY bytes.
+     *
+     * @param in the body
+     * @return the body as text
+     * @throws IOException if reading fails
+     * @throws IllegalArgumentException if the body is too large
+     */
+    private static String body(final InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[MAX_BODY];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+            if (out.size() > MAX_BODY) {
+                throw new IllegalArgumentException("Body too large.");
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * One endpoint: admission, timing and error handling around the
+     * work of serving it.
+     */
+    private abstract class Endpoint implements HttpHandler {
+
+        private final Histogram latency = new Histogram();
+        private final String method;
+
+        /**
+         * Create an endpoint and register its latency histogram.
+         *
+         * @param name name to report latencies under
+         * @param method the HTTP method it answers
+         */
+        Endpoint(final String name, final String method) {
+            this.method = method;
+            latencies.put(name, latency);
+        }
+
+        /**
+         * Do the endpoint's work.
+         *
+         * @param query the query parameters
+         * @param body the request body
+         * @return the reply
+         * @throws IllegalArgumentException if the request is bad
+         */
+        protected abstract Reply serve(Map<String, String> query,
+                                       String body);
+
+        /** {@inheritDoc} */
+        public final void handle(final HttpExchange exchange)
+            throws IOException {
+            long start = System.nanoTime();
+            try {
+                Map<String, String> query =
+                    parameters(exchange.getRequestURI().getRawQuery());
+                String accept = exchange.getRequestHeaders().getFirst("Accept");
+                boolean json = "json".equals(query.get("format"))
+                    || (accept != null && accept.contains("application/json"));
+                Reply reply;
+                if (!method.equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    reply = new Reply(405).put("error", "use " + method);
+                } else {
+                    reply = reply(exchange, query);
+                }
+                byte[] bytes = (json ? reply.toJson() : reply.toText())
+                    .getBytes(StandardCharsets.US_ASCII);
+                exchange.getResponseHeaders().set("Content-Type", json
+                                                  ? "application/json"
+                                                  : "text/plain");
+                exchange.sendResponseHeaders(reply.status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            } finally {
+                exchange.close();
+                latency.record(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Read the body and serve the request, turning failures into
+         * error replies.
+         *
+         * @param exchange the exchange
+         * @param query the query parameters
+         * @return the reply, 400 for a bad request and 500 for a bug
+         * @throws IOException if the body cannot be read
+         */
+        private Reply reply(final HttpExchange exchange,
+                            final Map<String, String> query)
+            throws IOException {
+            try {
+                return admit(query, body(exchange.getRequestBody()));
+            } catch (IllegalArgumentException e) {
+                return new Reply(400).put("error", e.getMessage());
+            } catch (RuntimeException e) {
+                return new Reply(500).put("error", "internal error");
+            }
+        }
+
+        /**
+         * Serve the request once a permit is free.
+         *
+         * @param query the query parameters
+         * @param body the request body
+         * @return the reply, 503 if no permit came in time
+         */
+        private Reply admit(final Map<String, String> query,
+                            final String body) {
+            boolean admitted = false;
+            try {
+                admitted = permits.tryAcquire(WAIT_MILLIS,
+                                              TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!admitted) {
+                rejected.increment();
+                return new Reply(503).put("error", "busy");
+            }
+            try {
+                return serve(query, body);
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * A reply's status and fields, written as text or JSON.
+     */
+    private static final class Reply {
+
+        private final int status;
+        private final Map<String, Object> fields =
+            new LinkedHashMap<String, Object>();
+
+        /**
+         * Create an empty reply.
+         *
+         * @param status the HTTP status code
+         */
+        private Reply(final int status) {
+            this.status = status;
+        }
+
+        /**
+         * Add a field.
+         *
+         * @param name field name
+         * @param value a number, boolean, or anything written as text
+         * @return this reply
+         */
+        private Reply put(final String name, final Object value) {
+            fields.put(name, value);
+            return this;
+        }
+
+        /**
+         * The field values separated by spaces, on one line.
+         *
+         * @return the reply as text
+         */
+        private String toText() {
+            StringBuilder sb = new StringBuilder();
+            for (Object value : fields.values()) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(value);
+            }
+            return sb.append('\n').toString();
+        }
+
+        /**
+         * The fields as a JSON object, on one line.
+         *
+         * @return the reply as JSON
+         */
+        private String toJson() {
+            StringBuilder sb = new StringBuilder("{");
+            for (Map.Entry<String, Object> e : fields.entrySet()) {
+                if (sb.length() > 1) {
+                    sb.append(',');
+                }
+                sb.append('"').append(e.getKey()).append("\":");
+                Object value = e.getValue();
+                if (value instanceof Number || value instanceof Boolean) {
+                    sb.append(value);
+                } else {
+                    String text = String.valueOf(value);
+                    sb.append('"');
+                    for (int i = 0; i < text.length(); i++) {
+                        char c = text.charAt(i);
+                        if (c == '"' || c == '\\') {
+                            sb.append('\\');
+                        }
+                        sb.append(c < ' ' || c > '~' ? '?' : c);
+                    }
+                    sb.append('"');
+                }
+            }
+            return sb.append("}\n").toString();
+        }
+    }
+}
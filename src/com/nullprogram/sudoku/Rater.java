@@ -0,0 +1,519 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Grades puzzles by the human techniques needed to solve them.
+ *
+ * The rater keeps a candidate mask for every cell and solves by
+ * logic alone, at each step applying the easiest technique that makes
+ * progress, either by filling in a cell or by removing candidates.
+ * The grade is the weight of the hardest technique used, and a puzzle
+ * that logic cannot finish needs a {@link Technique#GUESS}. Techniques
+ * are always tried in the same order, so a puzzle always gets the
+ * same grade.
+ *
+ * Cells are indexed 0 through 80 in row order. A rater keeps its
+ * state between calls, so each thread should use its own instance.
+ */
+public class Rater {
+
+    /* Row, column and box of each flat cell index. */
+    private static final int[] ROW = new int[81];
+    private static final int[] COL = new int[81];
+    private static final int[] BOX = new int[81];
+
+    /* Cells of each row (0-8), column (9-17) and box (18-26). */
+    private static final int[][] UNITS = new int[27][9];
+
+    /* The 20 other cells sharing a unit with each cell. */
+    private static final int[][] PEERS = new int[81][20];
+
+    static {
+        for (int i = 0; i < 81; i++) {
+            ROW[i] = i / 9;
+            COL[i] = i % 9;
+            BOX[i] = (ROW[i] / 3) * 3 + COL[i] / 3;
+        }
+        int[] sizes = new int[27];
+        for (int i = 0; i < 81; i++) {
+            UNITS[ROW[i]][sizes[ROW[i]]++] = i;
+            UNITS[9 + COL[i]][sizes[9 + COL[i]]++] = i;
+            UNITS[18 + BOX[i]][sizes[18 + BOX[i]]++] = i;
+        }
+        for (int i = 0; i < 81; i++) {
+            int n = 0;
+            for (int j = 0; j < 81; j++) {
+                if (j != i && (ROW[i] == ROW[j] || COL[i] == COL[j]
+                               || BOX[i] == BOX[j])) {
+                    PEERS[i][n++] = j;
+                }
+            }
+        }
+    }
+
+    /* Solving state: values, and candidate masks of empty cells. */
+    private final int[] values = new int[81];
+    private final int[] cands = new int[81];
+    private int filled;
+
+    /* The cell most recently filled. */
+    private int last;
+
+    /* Scratch lists for the subset and fish searches. */
+    private final int[] listA = new int[9];
+    private final int[] listB = new int[9];
+
+    /* Steps taken with each technique during the last rating. */
+    private final int[] steps = new int[Technique.values().length];
+    private boolean solved;
+
+    /**
+     * Grade a puzzle.
+     *
+     * @param puzzle the puzzle, which is not modified
+     * @return weight of the hardest technique needed, 0 if complete
+     */
+    public final int grade(final Board puzzle) {
+        Technique hardest = rate(puzzle);
+        return hardest == null ? 0 : hardest.getWeight();
+    }
+
+    /**
+     * Find the hardest technique needed to solve a puzzle.
+     *
+     * A puzzle with conflicting givens or no solution gets
+     * {@link Technique#GUESS}, as does one that needs guessing.
+     *
+     * @param puzzle the puzzle, which is not modified
+     * @return the hardest technique, or null if the puzzle is complete
+     */
+    public final Technique rate(final Board puzzle) {
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = 0;
+        }
+        solved = false;
+        if (!load(puzzle)) {
+            return Technique.GUESS;
+        }
+        Technique hardest = null;
+        while (filled < 81) {
+            Technique t = step();
+            if (t == null) {
+                return Technique.GUESS;
+            }
+            steps[t.ordinal()]++;
+            if (hardest == null || t.compareTo(hardest) > 0) {
+                hardest = t;
+            }
+        }
+        solved = true;
+        return hardest;
+    }
+
+    /**
+     * Find the next cell that logic can fill on a board.
+     *
+     * Techniques are applied in the usual order to the board as it
+     * stands until one of them fills a cell. Only that much of the
+     * puzzle is solved, so a hint costs a few steps of rating rather
+     * than a search, however many hints are asked for.
+     *
+     * @param board the board, which is not modified and should hold
+     *        only values that agree with the solution
+     * @return the hint, or null if the board is complete, has
+     *         conflicting values or needs a guess
+     */
+    public final Hint hint(final Board board) {
+        if (!load(board)) {
+            return null;
+        }
+        Technique hardest = null;
+        while (filled < 81) {
+            int before = filled;
+            Technique t = step();
+            if (t == null) {
+                return null;
+            }
+            if (hardest == null || t.compareTo(hardest) > 0) {
+                hardest = t;
+            }
+            if (filled > before) {
+                Position pos =
+                    new Position((byte) COL[last], (byte) ROW[last]);
+                return new Hint(pos, (byte) values[last], hardest);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The number of steps the last rating took with a technique.
+     *
+     * @param technique the technique
+     * @return number of steps
+     */
+    public final int getSteps(final Technique technique) {
+        return steps[technique.ordinal()];
+    }
+
+    /**
+     * Whether the last rated puzzle was solved by logic alone.
+     *
+     * @return true if no guess was needed
+     */
+    public final boolean isSolved() {
+        return solved;
+    }
+
+    /**
+     * Load a puzzle into the solving state.
+     *
+     * @param puzzle the puzzle
+     * @return false if two givens conflict
+     */
+    private boolean load(final Board puzzle) {
+        for (int i = 0; i < 81; i++) {
+            values[i] = 0;
+            cands[i] = Board.ALL;
+        }
+        filled = 0;
+        for (int i = 0; i < 81; i++) {
+            int val = puzzle.get(COL[i], ROW[i]);
+            if (val > 0) {
+                if ((cands[i] & (1 << val)) == 0) {
+                    return false;
+                }
+                place(i, val);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the easiest technique that makes progress.
+     *
+     * @return the technique applied, or null if none applies
+     */
+    private Technique step() {
+        for (int i = 0; i < 81; i++) {
+            if (values[i] == 0 && cands[i] == 0) {
+                return null;
+            }
+        }
+        if (hiddenSingle()) {
+            return Technique.HIDDEN_SINGLE;
+        } else if (nakedSingle()) {
+            return Technique.NAKED_SINGLE;
+        } else if (lockedCandidates()) {
+            return Technique.LOCKED_CANDIDATES;
+        } else if (nakedSubset(2)) {
+            return Technique.NAKED_PAIR;
+        } else if (fish(2)) {
+            return Technique.X_WING;
+        } else if (hiddenSubset(2)) {
+            return Technique.HIDDEN_PAIR;
+        } else if (nakedSubset(3)) {
+            return Technique.NAKED_TRIPLE;
+        } else if (fish(3)) {
+            return Technique.SWORDFISH;
+        } else if (hiddenSubset(3)) {
+            return Technique.HIDDEN_TRIPLE;
+        }
+        return null;
+    }
+
+    /**
+     * Fill in a value that has only one place left in some unit.
+     *
+     * @return true if a cell was filled
+     */
+    private boolean hiddenSingle() {
+        for (int u = 26; u >= 0; u--) {
+            int[] unit = UNITS[u];
+            int once = 0;
+            int twice = 0;
+            for (int i = 0; i < 9; i++) {
+                int mask = cands[unit[i]];
+                twice |= once & mask;
+                once |= mask;
+            }
+            int only = once & ~twice;
+            if (only != 0) {
+                int val = Integer.numberOfTrailingZeros(only);
+                for (int i = 0; i < 9; i++) {
+                    if ((cands[unit[i]] & only & -only) != 0) {
+                        place(unit[i], val);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fill in a cell that has only one candidate left.
+     *
+     * @return true if a cell was filled
+     */
+    private boolean nakedSingle() {
+        for (int i = 0; i < 81; i++) {
+            int mask = cands[i];
+            if (mask != 0 && (mask & (mask - 1)) == 0) {
+                place(i, Integer.numberOfTrailingZeros(mask));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove candidates locked into the intersection of a box and a
+     * line, whether pointing out of the box or claimed by the line.
+     *
+     * @return true if any candidates were removed
+     */
+    private boolean lockedCandidates() {
+        for (int line = 0; line < 18; line++) {
+            int[] cells = UNITS[line];
+            for (int k = 0; k < 3; k++) {
+                int box = BOX[cells[k * 3]];
+                int inside = 0;
+                int lineRest = 0;
+                int boxRest = 0;
+                for (int i = 0; i < 9; i++) {
+                    int c = cells[i];
+                    if (BOX[c] == box) {
+                        inside |= cands[c];
+                    } else {
+                        lineRest |= cands[c];
+                    }
+                }
+                int[] boxCells = UNITS[18 + box];
+                for (int i = 0; i < 9; i++) {
+                    int c = boxCells[i];
+                    if (line < 9 ? ROW[c] != line : COL[c] != line - 9) {
+                        boxRest |= cands[c];
+                    }
+                }
+                int pointing = inside & ~boxRest & lineRest;
+                int claiming = inside & ~lineRest & boxRest;
+                boolean changed = false;
+                for (int i = 0; i < 9; i++) {
+                    if (BOX[cells[i]] != box) {
+                        changed |= eliminate(cells[i], pointing);
+                    }
+                    int c = boxCells[i];
+                    if (line < 9 ? ROW[c] != line : COL[c] != line - 9) {
+                        changed |= eliminate(c, claiming);
+                    }
+                }
+                if (changed) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove candidates using n cells of a unit that together hold only
+     * n candidates, which must go in those cells.
+     *
+     * @param n subset size
+     * @return true if any candidates were removed
+     */
+    private boolean nakedSubset(final int n) {
+        int[] open = listA;
+        for (int u = 0; u < 27; u++) {
+            int[] unit = UNITS[u];
+            int k = 0;
+            for (int i = 0; i < 9; i++) {
+                if (cands[unit[i]] != 0) {
+                    open[k++] = unit[i];
+                }
+            }
+            if (k <= n) {
+                continue;
+            }
+            for (int sel = (1 << n) - 1; sel < 1 << k; sel = next(sel)) {
+                int union = 0;
+                for (int i = 0; i < k; i++) {
+                    if ((sel & (1 << i)) != 0) {
+                        union |= cands[open[i]];
+                    }
+                }
+                if (Integer.bitCount(union) == n) {
+                    boolean changed = false;
+                    for (int i = 0; i < k; i++) {
+                        if ((sel & (1 << i)) == 0) {
+                            changed |= eliminate(open[i], union);
+                        }
+                    }
+                    if (changed) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove candidates using n values that fit in only n cells of a
+     * unit, so those cells can hold nothing else.
+     *
+     * @param n subset size
+     * @return true if any candidates were removed
+     */
+    private boolean hiddenSubset(final int n) {
+        int[] places = listA;
+        int[] vals = listB;
+        for (int u = 0; u < 27; u++) {
+            int[] unit = UNITS[u];
+            int k = 0;
+            for (int val = 1; val <= 9; val++) {
+                int where = 0;
+                for (int i = 0; i < 9; i++) {
+                    if ((cands[unit[i]] & (1 << val)) != 0) {
+                        where |= 1 << i;
+                    }
+                }
+                if (where != 0) {
+                    vals[k] = val;
+                    places[k++] = where;
+                }
+            }
+            if (k <= n) {
+                continue;
+            }
+            for (int sel = (1 << n) - 1; sel < 1 << k; sel = next(sel)) {
+                int union = 0;
+                int keep = 0;
+                for (int i = 0; i < k; i++) {
+                    if ((sel & (1 << i)) != 0) {
+                        union |= places[i];
+                        keep |= 1 << vals[i];
+                    }
+                }
+                if (Integer.bitCount(union) == n) {
+                    boolean changed = false;
+                    for (int i = 0; i < 9; i++) {
+                        if ((union & (1 << i)) != 0) {
+                            changed |= eliminate(unit[i], ~keep);
+                        }
+                    }
+                    if (changed) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove candidates using a value confined to the same n columns
+     * of n rows, or the same n rows of n columns: an X-Wing for two
+     * and a Swordfish for three.
+     *
+     * @param n number of lines
+     * @return true if any candidates were removed
+     */
+    private boolean fish(final int n) {
+        int[] lines = listA;
+        int[] covers = listB;
+        for (int val = 1; val <= 9; val++) {
+            int bit = 1 << val;
+            for (int base = 0; base < 18; base += 9) {
+                int k = 0;
+                for (int line = 0; line < 9; line++) {
+                    int[] cells = UNITS[base + line];
+                    int where = 0;
+                    for (int i = 0; i < 9; i++) {
+                        if ((cands[cells[i]] & bit) != 0) {
+                            where |= 1 << i;
+                        }
+                    }
+                    int count = Integer.bitCount(where);
+                    if (count >= 2 && count <= n) {
+                        lines[k] = line;
+                        covers[k++] = where;
+                    }
+                }
+                for (int sel = (1 << n) - 1; sel < 1 << k; sel = next(sel)) {
+                    int union = 0;
+                    int used = 0;
+                    for (int i = 0; i < k; i++) {
+                        if ((sel & (1 << i)) != 0) {
+                            union |= covers[i];
+                            used |= 1 << lines[i];
+                        }
+                    }
+                    if (Integer.bitCount(union) == n) {
+                        boolean changed = false;
+                        for (int line = 0; line < 9; line++) {
+                            if ((used & (1 << line)) != 0) {
+                                continue;
+                            }
+                            int[] cells = UNITS[base + line];
+                            for (int i = 0; i < 9; i++) {
+                                if ((union & (1 << i)) != 0) {
+                                    changed |= eliminate(cells[i], bit);
+                                }
+                            }
+                        }
+                        if (changed) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The next larger integer with the same number of bits set.
+     *
+     * @param sel a non-zero bit set
+     * @return the next bit set of the same size
+     */
+    private static int next(final int sel) {
+        int low = sel & -sel;
+        int ripple = sel + low;
+        return (((ripple ^ sel) >>> 2) / low) | ripple;
+    }
+
+    /**
+     * Fill in a cell and remove its value from its peers' candidates.
+     *
+     * @param cell flat cell index
+     * @param val the value
+     */
+    private void place(final int cell, final int val) {
+        int bit = ~(1 << val);
+        values[cell] = val;
+        cands[cell] = 0;
+        last = cell;
+        int[] peers = PEERS[cell];
+        for (int i = 0; i < 20; i++) {
+            cands[peers[i]] &= bit;
+        }
+        filled++;
+    }
+
+    /**
+     * Remove candidates from a cell.
+     *
+     * @param cell flat cell index
+     * @param mask candidates to remove
+     * @return true if any were present
+     */
+    private boolean eliminate(final int cell, final int mask) {
+        if ((cands[cell] & mask) != 0) {
+            cands[cell] &= ~mask;
+            return true;
+        }
+        return false;
+    }
+}
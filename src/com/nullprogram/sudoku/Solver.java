@@ -0,0 +1,30 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Something that can solve Sudoku boards.
+ *
+ * Implementations must be safe to share between threads.
+ */
+public interface Solver {
+
+    /**
+     * Solve a board in place.
+     *
+     * If the board has no solution it is left unchanged.
+     *
+     * @param board the board to solve
+     * @return true if a solution was found
+     */
+    boolean solve(Board board);
+
+    /**
+     * Count the solutions of a board, stopping early at a limit.
+     *
+     * The board is left unchanged.
+     *
+     * @param board the board to check
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions, never more than limit
+     */
+    int countSolutions(Board board, int limit);
+}
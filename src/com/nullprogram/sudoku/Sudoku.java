@@ -1,16 +1,15 @@
 package com.nullprogram.sudoku;
 
-import java.util.Stack;
-import java.util.Arrays;
-import java.util.Random;
-import java.util.Collections;
-
 import java.awt.Color;
+import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Dimension;
 import java.awt.FontMetrics;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.awt.event.KeyListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseListener;
@@ -23,7 +22,12 @@ import javax.swing.JFrame;
 import javax.swing.JComponent;
 
 /**
- * A Sudoku board capable of generating puzzles and interacting.
+ * An interactive Sudoku board that plays puzzles from a {@link Generator}.
+ *
+ * The background, grid lines and givens are drawn once into an
+ * off-screen image, which is redrawn only when the puzzle or the
+ * background color changes. Everything else repaints only the cells
+ * that changed.
  */
 public class Sudoku extends JComponent
     implements KeyListener, MouseListener, Runnable {
@@ -33,55 +37,78 @@ public class Sudoku extends JComponent
     private static final float FONT_SIZE = 24f;
     private static final int CELL_SIZE = 40;
     private static final int PADDING = 10;
-    private static final int TIMEOUT = 1500;
+
+    /* Digits as text, indexed by value. */
+    private static final String[] DIGITS = {
+        "", "1", "2", "3", "4", "5", "6", "7", "8", "9"
+    };
+
+    /* Background shades for the fade out, indexed by level - FADE_MIN. */
+    private static final int FADE_MIN = 192;
+    private static final Color[] FADE = new Color[256 - FADE_MIN];
+
+    static {
+        for (int i = 0; i < FADE.length; i++) {
+            FADE[i] = new Color(FADE_MIN + i, FADE_MIN + i, FADE_MIN + i);
+        }
+    }
 
     /** The easiest difficulty (32 givens). */
-    public static final int EASY = 32;
+    public static final int EASY = Generator.EASY;
 
     /** A medium difficulty (28 givens). */
-    public static final int MEDIUM = 28;
+    public static final int MEDIUM = Generator.MEDIUM;
 
     /** A hard difficulty (24 givens). */
-    public static final int HARD = 24;
+    public static final int HARD = Generator.HARD;
+
+    /* Ready puzzles shared by every board. */
+    private static PuzzlePool pool;
 
-    /* Work grid and the displayed grid. */
-    private byte[][] grid;
+    /* The puzzle givens and the displayed grid. */
     private byte[][] display;
     private byte[][] orig;
-    private boolean[][] valid;
+    private final ConflictTracker tracker = new ConflictTracker();
 
-    private Random rng;
+    /* The puzzle's solution, and the entries agreeing with it. */
+    private Board solution;
+    private final Board known = new Board();
+    private final Rater rater = new Rater();
+
+    private final Generator generator = new Generator();
+    private final Solver solver = new BacktrackSolver();
     private Position origin = new Position((byte) 0, (byte) 0);
-    private Stack<Position> positions;
-    private Stack<Position> used;
     private Position selected;
     private boolean playing = false;
 
     /* Generation variables. */
     private int givensGoal;
-    private long initTime;
     private volatile boolean generating = false;
     private Timer timer;
     private int animateState;
     private int animateStateMax = 32;
     private int fade;
 
+    /* Rendering caches, rebuilt on demand. */
+    private transient BufferedImage background;
+    private volatile boolean backgroundValid;
+    private transient Font numberFont;
+    private transient Font messageFont;
+    private transient int[] digitOffsets;
+    private transient int digitAscent;
+
     /**
      * Create a new Sudoku board.
      */
     public Sudoku() {
-        grid = new byte[9][9];
         display = new byte[9][9];
         orig = new byte[9][9];
-        valid = new boolean[9][9];
-        checkValid();
         int side = CELL_SIZE * 9 + PADDING * 2;
         Dimension size = new Dimension(side, side);
         setPreferredSize(size);
         setMinimumSize(size);
         setOpaque(true);
         setBackground(Color.white);
-        rng = new Random();
         addKeyListener(this);
         addMouseListener(this);
         selected = origin;
@@ -90,6 +117,9 @@ public class Sudoku extends JComponent
     /**
      * Create a new Sudoku puzzle.
      *
+     * A ready puzzle is used if there is one, otherwise one is
+     * generated in the background while an animation plays.
+     *
      * @param difficulty the sudoku's difficulty
      */
     public final void createSudoku(final int difficulty) {
@@ -97,14 +127,26 @@ public class Sudoku extends JComponent
         givensGoal = difficulty;
         setBackground(Color.WHITE);
         if (!generating) {
+            Board ready = pool().poll(difficulty);
+            if (ready != null) {
+                play(ready);
+                return;
+            }
             animateState = 0;
             ActionListener listener = new ActionListener() {
                 public void actionPerformed(final ActionEvent evt) {
+                    Rectangle[] before = squares();
                     animateState++;
                     if (animateState >= animateStateMax) {
                         animateState = 0;
                     }
-                    repaint();
+                    Rectangle[] after = squares();
+                    for (int i = 0; i < 2; i++) {
+                        paintImmediately(before[i]);
+                        if (!after[i].equals(before[i])) {
+                            paintImmediately(after[i]);
+                        }
+                    }
                 }
             };
             timer = new Timer(50, listener);
@@ -112,40 +154,49 @@ public class Sudoku extends JComponent
             generating = true;
             clear(display);
             clear(orig);
-            clear(grid);
-            checkValid();
+            tracker.clear();
             (new Thread(this)).start();
-            repaint();
+            invalidateBackground();
         }
     }
 
     /** {@inheritDoc} */
     public final void run() {
-        boolean failed;
-        do {
-            failed = false;
-            try {
-                clear(grid);
-                initPositions();
-                initTime = System.currentTimeMillis();
-                System.out.println("Generating ...");
-                System.out.println("result = " + generate());
-                System.out.println("Eliminating ...");
-                eliminate();
-            } catch (TimeoutException e) {
-                System.out.println("Timeout.");
-                failed = true;
-            }
-        } while (failed || (filled() != givensGoal));
-        System.out.println("Givens: " + filled() + " (" + givensGoal + ")");
-        copy(grid, orig);
-        swap();
-        copy(orig, grid);
-        checkValid();
+        Board puzzle = generator.generate(givensGoal);
+        timer.stop();
+        play(puzzle);
+    }
+
+    /**
+     * Start playing a puzzle.
+     *
+     * @param puzzle the puzzle to play
+     */
+    private void play(final Board puzzle) {
+        solution = puzzle.getSolution();
+        if (solution == null) {
+            solution = new Board(puzzle);
+            solver.solve(solution);
+        }
+        puzzle.copyTo(orig);
+        puzzle.copyTo(display);
+        tracker.copyFrom(display);
         generating = false;
         playing = true;
-        timer.stop();
-        repaint();
+        invalidateBackground();
+    }
+
+    /**
+     * The pool of ready puzzles, started on first use.
+     *
+     * @return the shared puzzle pool
+     */
+    private static synchronized PuzzlePool pool() {
+        if (pool == null) {
+            pool = new PuzzlePool();
+            pool.start();
+        }
+        return pool;
     }
 
     /**
@@ -154,6 +205,7 @@ public class Sudoku extends JComponent
      * @param args command line arguments
      */
     public static void main(final String[] args) {
+        Metrics.global().register(Metrics.NAME);
         Sudoku sudoku = new Sudoku();
         JFrame frame = new JFrame("Sudoku");
         frame.add(sudoku);
@@ -168,65 +220,142 @@ public class Sudoku extends JComponent
     /**
      * Draw a Sudoku board on this component.
      *
+     * Only the cells within the clip are drawn over the cached
+     * background.
+     *
      * @param g the graphics to be painted
      */
     public final void paintComponent(final Graphics g) {
-        super.paintComponent(g);
-        g.setColor(getBackground());
-        g.fillRect(0, 0, getWidth(), getHeight());
-
-        if (!generating) {
-            paintMarks(g);
-            paintGrid(g);
-            paintSelector(g);
-            paintNumbers(g);
-        } else {
-            double angle = animateState * Math.PI * 2f / animateStateMax;
-            int x = (int) (Math.cos(angle) * 4.5) + 4;
-            int y = (int) (Math.sin(angle) * 4.5) + 4;
+        g.drawImage(background(), 0, 0, null);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        if (generating) {
             g.setColor(Color.GREEN);
-            g.fillRect(x * CELL_SIZE + PADDING,
-                       y * CELL_SIZE + PADDING,
-                       CELL_SIZE, CELL_SIZE);
-            g.fillRect((8 - x) * CELL_SIZE + PADDING,
-                       (8 - y) * CELL_SIZE + PADDING,
-                       CELL_SIZE, CELL_SIZE);
+            for (Rectangle square : squares()) {
+                if (square.intersects(clip)) {
+                    g.fillRect(square.x + 2, square.y + 2,
+                               CELL_SIZE, CELL_SIZE);
+                    Graphics lines = g.create();
+                    lines.clipRect(square.x, square.y,
+                                   square.width, square.height);
+                    paintGrid(lines);
+                    lines.dispose();
+                }
+            }
+            return;
+        }
+
+        int x0 = cellAt(clip.x);
+        int y0 = cellAt(clip.y);
+        int x1 = cellAt(clip.x + clip.width - 1);
+        int y1 = cellAt(clip.y + clip.height - 1);
+        boolean marked = false;
+        g.setColor(Color.YELLOW);
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (orig[x][y] == 0 && !tracker.isValid(x, y)) {
+                    g.fillRect(x * CELL_SIZE + PADDING,
+                               y * CELL_SIZE + PADDING,
+                               CELL_SIZE, CELL_SIZE);
+                    marked = true;
+                }
+            }
+        }
+        if (marked) {
             paintGrid(g);
+        }
+        paintSelector(g);
+        paintNumbers(g, x0, y0, x1, y1, false);
+    }
 
-            String message = "Generating";
-            g.setFont(g.getFont().deriveFont(FONT_SIZE - 4));
-            FontMetrics fm = g.getFontMetrics();
-            int width = fm.stringWidth(message);
-            int height = fm.getHeight();
-            g.setColor(Color.LIGHT_GRAY);
-            g.fillRect(getWidth() / 2 - width / 2 - PADDING,
-                       getHeight() / 2 - height / 2 - PADDING,
-                       width + PADDING * 2, height + PADDING * 2);
-            g.setColor(Color.BLACK);
-            g.drawString(message, getWidth() / 2 - width / 2,
-                         getHeight() / 2 + height / 2);
+    /**
+     * The cached background, redrawn first if it is out of date.
+     *
+     * When playing this holds the givens, and when generating the
+     * "Generating" message.
+     *
+     * @return the background image
+     */
+    private BufferedImage background() {
+        int w = Math.max(1, getWidth());
+        int h = Math.max(1, getHeight());
+        if (background == null || background.getWidth() != w
+                || background.getHeight() != h) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (gc == null) {
+                background = new BufferedImage(w, h,
+                                               BufferedImage.TYPE_INT_RGB);
+            } else {
+                background = gc.createCompatibleImage(w, h);
+            }
+            backgroundValid = false;
+        }
+        if (!backgroundValid) {
+            backgroundValid = true;
+            Graphics g = background.createGraphics();
+            g.setFont(getFont());
+            g.setColor(getBackground());
+            g.fillRect(0, 0, w, h);
+            if (generating) {
+                paintGrid(g);
+                paintMessage(g, "Generating");
+            } else {
+                paintGivens(g);
+                paintGrid(g);
+                paintNumbers(g, 0, 0, 8, 8, true);
+            }
+            g.dispose();
         }
+        return background;
     }
 
     /**
-     * Draw indiviual cell markings.
+     * Mark the cached background out of date and repaint everything.
+     */
+    private void invalidateBackground() {
+        backgroundValid = false;
+        repaint();
+    }
+
+    /**
+     * Draw a message in a box in the middle of the board.
      *
      * @param g the graphics to paint
+     * @param message the message
      */
-    private void paintMarks(final Graphics g) {
+    private void paintMessage(final Graphics g, final String message) {
+        if (messageFont == null) {
+            messageFont = g.getFont().deriveFont(FONT_SIZE - 4);
+        }
+        g.setFont(messageFont);
+        FontMetrics fm = g.getFontMetrics();
+        int width = fm.stringWidth(message);
+        int height = fm.getHeight();
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(getWidth() / 2 - width / 2 - PADDING,
+                   getHeight() / 2 - height / 2 - PADDING,
+                   width + PADDING * 2, height + PADDING * 2);
+        g.setColor(Color.BLACK);
+        g.drawString(message, getWidth() / 2 - width / 2,
+                     getHeight() / 2 + height / 2);
+    }
+
+    /**
+     * Shade the cells holding givens.
+     *
+     * @param g the graphics to paint
+     */
+    private void paintGivens(final Graphics g) {
+        g.setColor(Color.LIGHT_GRAY);
         for (int y = 0; y < 9; y++) {
             for (int x = 0; x < 9; x++) {
-                int marked = orig[x][y];
-                if (marked > 0) {
-                    g.setColor(Color.LIGHT_GRAY);
-                } else if (!valid[x][y]) {
-                    g.setColor(Color.YELLOW);
-                } else {
-                    g.setColor(getBackground());
+                if (orig[x][y] > 0) {
+                    g.fillRect(x * CELL_SIZE + PADDING,
+                               y * CELL_SIZE + PADDING,
+                               CELL_SIZE, CELL_SIZE);
                 }
-                g.fillRect(x * CELL_SIZE + PADDING,
-                           y * CELL_SIZE + PADDING,
-                           CELL_SIZE, CELL_SIZE);
             }
         }
     }
@@ -275,119 +404,100 @@ public class Sudoku extends JComponent
     }
 
     /**
-     * Draw the numbers.
+     * Draw either the givens or the player's numbers in a range of cells.
      *
      * @param g the graphics to paint
-     */
-    private void paintNumbers(final Graphics g) {
-        /* Set the font. */
-        g.setFont(g.getFont().deriveFont(FONT_SIZE));
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                             RenderingHints.VALUE_ANTIALIAS_ON);
-
-        /* Draw the numbers. */
+     * @param x0 first column
+     * @param y0 first row
+     * @param x1 last column
+     * @param y1 last row
+     * @param givens true to draw the givens, false the player's numbers
+     */
+    private void paintNumbers(final Graphics g, final int x0, final int y0,
+                              final int x1, final int y1,
+                              final boolean givens) {
+        if (numberFont == null) {
+            numberFont = g.getFont().deriveFont(FONT_SIZE);
+            FontMetrics fm = g.getFontMetrics(numberFont);
+            digitOffsets = new int[DIGITS.length];
+            for (int i = 0; i < DIGITS.length; i++) {
+                digitOffsets[i] = CELL_SIZE / 2 - fm.stringWidth(DIGITS[i]) / 2;
+            }
+            digitAscent = CELL_SIZE / 2 + fm.getAscent() / 2;
+        }
+        g.setFont(numberFont);
+        ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                          RenderingHints.VALUE_ANTIALIAS_ON);
         g.setColor(Color.BLACK);
-        FontMetrics fm = g.getFontMetrics();
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
                 int val = display[x][y];
-                if (val > 0) {
-                    int xx = x * CELL_SIZE + PADDING + CELL_SIZE / 2;
-                    int yy = y * CELL_SIZE + PADDING + CELL_SIZE / 2;
-                    String num = "" + val;
-                    g.drawString(num, xx - fm.stringWidth(num) / 2,
-                                 yy + fm.getAscent() / 2);
+                if (val > 0 && (orig[x][y] > 0) == givens) {
+                    g.drawString(DIGITS[val],
+                                 x * CELL_SIZE + PADDING + digitOffsets[val],
+                                 y * CELL_SIZE + PADDING + digitAscent);
                 }
             }
         }
     }
 
     /**
-     * Clear a grid.
-     *
-     * @param array grid to be cleared
-     */
-    private void clear(final byte[][] array) {
-        for (byte y = 0; y < 9; y++) {
-            for (byte x = 0; x < 9; x++) {
-                array[x][y] = 0;
-            }
-        }
-    }
-
-    /**
-     * Create a symmetrical order the positions.
-     */
-    private void initPositions() {
-        positions = new Stack<Position>();
-        used = new Stack<Position>();
-        for (byte y = 0; y < 9; y++) {
-            for (byte x = 0; x < y; x++) {
-                Position pos = new Position(x, y);
-                positions.push(pos);
-            }
-        }
-        for (byte i = 0; i < 4; i++) {
-            positions.push(new Position(i, i));
-        }
-        Collections.shuffle(positions);
-    }
-
-    /**
-     * Return mirror of position.
+     * The cell containing a coordinate, clamped to the board.
      *
-     * @param pos position to mirror
-     * @return mirrored position
+     * @param d x or y coordinate
+     * @return the cell's column or row
      */
-    private Position mirror(final Position pos) {
-        return new Position((byte) (8 - pos.getX()), (byte) (8 - pos.getY()));
+    private static int cellAt(final int d) {
+        int cell = Math.floorDiv(d - PADDING, CELL_SIZE);
+        return Math.max(0, Math.min(8, cell));
     }
 
     /**
-     * Return the number of filled positions.
+     * The area to repaint for a cell, including its thick borders.
      *
-     * @return number of filled positions
+     * @param x x position
+     * @param y y position
+     * @return the cell's bounds
      */
-    private int filled() {
-        int count = 0;
-        for (int y = 0; y < 9; y++) {
-            for (int x = 0; x < 9; x++) {
-                if (grid[x][y] > 0) {
-                    count++;
-                }
-            }
-        }
-        return count;
+    private static Rectangle cellBounds(final int x, final int y) {
+        return new Rectangle(x * CELL_SIZE + PADDING - 2,
+                             y * CELL_SIZE + PADDING - 2,
+                             CELL_SIZE + 4, CELL_SIZE + 4);
     }
 
     /**
-     * Get the value at position.
+     * Repaint a single cell.
      *
-     * @param p position
-     * @return the value at the position
+     * @param x x position
+     * @param y y position
      */
-    private byte get(final Position p) {
-        return grid[p.getX()][p.getY()];
+    private void repaintCell(final int x, final int y) {
+        repaint(cellBounds(x, y));
     }
 
     /**
-     * Set the value at position.
+     * The areas of the two animated squares shown while generating.
      *
-     * @param p position
-     * @param val the new value
+     * @return bounds of both squares
      */
-    private void set(final Position p, final byte val) {
-        grid[p.getX()][p.getY()] = val;
+    private Rectangle[] squares() {
+        double angle = animateState * Math.PI * 2f / animateStateMax;
+        int x = (int) (Math.cos(angle) * 4.5) + 4;
+        int y = (int) (Math.sin(angle) * 4.5) + 4;
+        return new Rectangle[] {cellBounds(x, y), cellBounds(8 - x, 8 - y)};
     }
 
     /**
-     * Reset the position to empty.
+     * Clear a grid.
      *
-     * @param p position to reset.
+     * @param array grid to be cleared
      */
-    private void unset(final Position p) {
-        grid[p.getX()][p.getY()] = (byte) 0;
+    private void clear(final byte[][] array) {
+        for (byte y = 0; y < 9; y++) {
+            for (byte x = 0; x < 9; x++) {
+                array[x][y] = 0;
+            }
+        }
     }
 
     /**
@@ -404,44 +514,23 @@ public class Sudoku extends JComponent
         int y = p.getY();
         if (orig[x][y] == 0) {
             display[x][y] = val;
-            grid[x][y] = val;
-        }
-        checkValid();
-        checkComplete();
-    }
-
-    /**
-     * Check the validity of the current board.
-     */
-    private void checkValid() {
-        for (byte y = 0; y < 9; y++) {
-            for (byte x = 0; x < 9; x++) {
-                Position pos = new Position(x, y);
-                byte val = get(pos);
-                if (val > 0) {
-                    boolean[] possible = possible(grid, pos);
-                    valid[x][y] = possible[val];
-                } else {
-                    valid[x][y] = true;
-                }
+            int n = tracker.set(x, y, val);
+            for (int k = 0; k < n; k++) {
+                int i = tracker.getRechecked(k);
+                repaintCell(i % 9, i / 9);
             }
         }
+        checkComplete();
     }
 
     /**
      * Check if the sudoku is complete.
      */
     private void checkComplete() {
-        for (byte y = 0; y < 9; y++) {
-            for (byte x = 0; x < 9; x++) {
-                if (!valid[x][y] || (display[x][y] == 0)) {
-                    return;
-                }
-            }
+        if (tracker.isComplete()) {
+            playing = false;
+            fadeOut();
         }
-        /* It is complete. */
-        playing = false;
-        fadeOut();
     }
 
     /**
@@ -452,12 +541,12 @@ public class Sudoku extends JComponent
         ActionListener listener = new ActionListener() {
             public void actionPerformed(final ActionEvent e) {
                 fade -= 2;
-                if (fade < 192) {
-                    fade = 192;
+                if (fade < FADE_MIN) {
+                    fade = FADE_MIN;
                     ((Timer) e.getSource()).stop();
                 }
-                setBackground(new Color(fade, fade, fade));
-                repaint();
+                setBackground(FADE[fade - FADE_MIN]);
+                invalidateBackground();
             }
         };
         (new Timer(50, listener)).start();
@@ -467,252 +556,41 @@ public class Sudoku extends JComponent
      * Auto-solve the currently selected position.
      */
     public final void hint() {
-        if (selected != null) {
-            byte[][] work = new byte[9][9];
-            copy(orig, work);
-            solve(work, 0);
-            userSet(selected, work[selected.getX()][selected.getY()]);
-        }
-    }
-
-    /**
-     * Generate a new Sudoku puzzle.
-     *
-     * @return true if build was successful
-     * @throws TimeoutException if generation took too long
-     */
-    private boolean generate() throws TimeoutException {
-        Position pos1 = positions.pop();
-        Position pos2 = mirror(pos1);
-        used.push(pos1);
-        boolean[] possible1 = possible(grid, pos1);
-        for (byte i : rand10()) {
-            if (possible1[i]) {
-                set(pos1, i);
-                for (byte j : rand10()) {
-                    boolean[] possible2 = possible(grid, pos2);
-                    if (possible2[j]) {
-                        set(pos2, j);
-                        int solutions = numSolutions();
-                        if (solutions > 1) {
-                            /* Keep filling in. */
-                            if (generate()) {
-                                return true;
-                            }
-                        } else if (solutions == 1) {
-                            /* Done, exactly one solution left. */
-                            return true;
-                        }
-                    }
-                }
-            }
-        }
-        /* Failed to generate a sudoku from here. */
-        unset(pos1);
-        unset(pos2);
-        positions.push(pos1);
-        used.pop();
-        return false;
-    }
-
-    /**
-     * Try to eliminate some hints.
-     *
-     * @throws TimeoutException if generation took too long
-     */
-    private void eliminate() throws TimeoutException {
-        Collections.shuffle(used);
-        while (!used.empty() && filled() > givensGoal) {
-            Position pos1 = used.pop();
-            Position pos2 = mirror(pos1);
-            byte val1 = get(pos1);
-            byte val2 = get(pos2);
-            unset(pos1);
-            unset(pos2);
-            if (numSolutions() > 1) {
-                set(pos1, val1);
-                set(pos2, val2);
-            }
-        }
-    }
-
-    /**
-     * Return the number of solutions on the current board.
-     *
-     * We only care if this is 0, 1, or greater than 1, so it will
-     * never actually return higher than 2.
-     *
-     * @return number of solutions
-     * @throws TimeoutException if generation took too long
-     */
-    private int numSolutions() throws TimeoutException {
-        if ((rng.nextInt(200) == 1)
-                && (System.currentTimeMillis() - initTime) > TIMEOUT) {
-            throw new TimeoutException();
-        }
-        Position pos = null;
-        for (byte y = 0; pos == null && y < 9; y++) {
-            for (byte x = 0; pos == null && x < 9; x++) {
-                if (grid[x][y] == 0) {
-                    pos = new Position(x, y);
-                }
-            }
-        }
-        if (pos == null) {
-            /* Board is full i.e. solved. */
-            return 1;
-        }
-
-        boolean[] possible = possible(grid, pos);
-        int count = 0;
-        for (byte i : rand10()) {
-            if (possible[i]) {
-                set(pos, i);
-                count += numSolutions();
-                if (count > 1) {
-                    unset(pos);
-                    return 2;
-                }
-            }
+        if (selected != null && solution != null) {
+            userSet(selected, solution.get(selected.getX(), selected.getY()));
         }
-        unset(pos);
-        return count;
-    }
-
-    /**
-     * Determine the grid's difficulty.
-     *
-     * @return the sudoku's difficulty
-     */
-    private int difficulty() {
-        byte[][] work = new byte[9][9];
-        copy(grid, work);
-        return solve(work, 0) - (9 * 9 - filled());
-    }
-
-    /**
-     * Return a randomly sorted array of 0-9.
-     *
-     * @return random list of 0-9
-     */
-    private static Byte[] rand10() {
-        Byte[] nums = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
-        Collections.shuffle(Arrays.asList(nums));
-        return nums;
     }
 
     /**
-     * Solve a grid.
+     * Fill in the next cell that logic can deduce from the board.
      *
-     * @param work the sudoku to solve
-     * @param depth current depth
-     * @return the depth of the call stack at solution
-     */
-    private int solve(final byte[][] work, final int depth) {
-        Position pos = null;
-        for (byte y = 0; pos == null && y < 9; y++) {
-            for (byte x = 0; pos == null && x < 9; x++) {
-                if (work[x][y] == 0) {
-                    pos = new Position(x, y);
-                }
-            }
-        }
-        if (pos == null) {
-            return depth + 1;
-        }
-        int x = pos.getX();
-        int y = pos.getY();
-
-        boolean[] possible = possible(work, pos);
-        for (byte i : rand10()) {
-            if (possible[i]) {
-                work[x][y] = i;
-                int val = solve(work, depth + 1);
-                if (val > 0) {
-                    return val + 1;
-                }
-            }
-        }
-        work[x][y] = 0;
-        return -1;
-    }
-
-    /**
-     * Possible values for given position.
+     * Entries that disagree with the solution are left out, so a
+     * mistake cannot lead to a wrong deduction. The deduced cell is
+     * selected and filled in, and the technique that justifies it is
+     * shown as the tool tip.
      *
-     * @param work the sudoku board to use
-     * @param pos the position to check
-     * @return list of value possibilities
+     * @return the hint, or null if logic alone cannot make progress
      */
-    private static boolean[] possible(final byte[][] work,
-                                      final Position pos) {
-        boolean[] possible = new boolean[10];
-        for (int i = 1; i < 10; i++) {
-            possible[i] = true;
-        }
-        for (int x = 0; x < 9; x++) {
-            if (x != pos.getX()) {
-                possible[work[x][pos.getY()]] = false;
-            }
+    public final Hint nextStep() {
+        if (!playing) {
+            return null;
         }
+        known.clear();
         for (int y = 0; y < 9; y++) {
-            if (y != pos.getY()) {
-                possible[work[pos.getX()][y]] = false;
-            }
-        }
-        int xx = (pos.getX() / 3) * 3;
-        int yy = (pos.getY() / 3) * 3;
-        for (int y = 0; y < 3; y++) {
-            for (int x = 0; x < 3; x++) {
-                if ((xx + x != pos.getX()) && (yy + y != pos.getY())) {
-                    possible[work[xx + x][yy + y]] = false;
+            for (int x = 0; x < 9; x++) {
+                byte val = display[x][y];
+                if (val > 0 && val == solution.get(x, y)) {
+                    known.set(x, y, val);
                 }
             }
         }
-        possible[0] = false;
-        return possible;
-    }
-
-    /**
-     * The number of possible values for a given position.
-     *
-     * @param pos the position to check
-     * @return number of possible values
-     */
-    private int numPossible(final Position pos) {
-        boolean[] possible = possible(grid, pos);
-        int count = 0;
-        for (int i = 1; i < 10; i++) {
-            if (possible[i]) {
-                count++;
-            }
-        }
-        return count;
-    }
-
-    /**
-     * Swap the display and working grids.
-     *
-     * This is so the display is always working with a consistent grid.
-     */
-    private void swap() {
-        byte[][] tmp = grid;
-        grid = display;
-        display = tmp;
-    }
-
-    /**
-     * Copy one grid to another.
-     *
-     * @param from origin grid
-     * @param to destination grid
-     */
-    private void copy(final byte[][] from, final byte[][] to) {
-        for (byte y = 0; y < 9; y++) {
-            for (byte x = 0; x < 9; x++) {
-                to[x][y] = from[x][y];
-            }
+        Hint hint = rater.hint(known);
+        if (hint != null) {
+            setSelected(hint.getPosition());
+            userSet(hint.getPosition(), hint.getValue());
+            setToolTipText(hint.getTechnique().toString());
         }
+        return hint;
     }
 
     /**
@@ -739,12 +617,24 @@ public class Sudoku extends JComponent
         byte x = pos.getX();
         byte y = pos.getY();
         if ((x < 9) && (x >= 0) && (y < 9) && (y >= 0)) {
+            deselect();
             selected = pos;
+            repaintCell(x, y);
             return true;
         }
         return false;
     }
 
+    /**
+     * Clear the selection, repainting the cell that was selected.
+     */
+    private void deselect() {
+        if (selected != null) {
+            repaintCell(selected.getX(), selected.getY());
+            selected = null;
+        }
+    }
+
     /** {@inheritDoc} */
     public final void keyTyped(final KeyEvent e) {
         char c = e.getKeyChar();
@@ -761,8 +651,9 @@ public class Sudoku extends JComponent
             createSudoku(HARD);
         } else if (c == 'h') {
             hint();
+        } else if (c == 'n') {
+            nextStep();
         }
-        repaint();
     }
 
     /** {@inheritDoc} */
@@ -784,7 +675,6 @@ public class Sudoku extends JComponent
                 userSet(selected, (byte) 0);
             }
         }
-        repaint();
     }
 
     /** {@inheritDoc} */
@@ -799,9 +689,8 @@ public class Sudoku extends JComponent
         int x = (int) Math.floor((px - PADDING) / CELL_SIZE);
         int y = (int) Math.floor((py - PADDING) / CELL_SIZE);
         if (!setSelected(new Position((byte) x, (byte) y))) {
-            selected = null;
+            deselect();
         }
-        repaint();
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,74 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Human solving techniques, from the easiest to the hardest.
+ *
+ * Each technique has a weight, roughly following the scale used by
+ * Sudoku Explainer multiplied by ten, so that a puzzle can be graded
+ * by the hardest technique it needs.
+ */
+public enum Technique {
+
+    /** The only cell in a row, column or box that can hold a value. */
+    HIDDEN_SINGLE("Hidden single", 15),
+
+    /** A cell with only one candidate left. */
+    NAKED_SINGLE("Naked single", 23),
+
+    /** A box's candidates for a value all lie on one line, or a
+     * line's candidates all lie in one box. */
+    LOCKED_CANDIDATES("Locked candidates", 28),
+
+    /** Two cells in a unit limited to the same two values. */
+    NAKED_PAIR("Naked pair", 30),
+
+    /** A value confined to the same two columns of two rows. */
+    X_WING("X-Wing", 32),
+
+    /** Two values confined to the same two cells of a unit. */
+    HIDDEN_PAIR("Hidden pair", 34),
+
+    /** Three cells in a unit limited to the same three values. */
+    NAKED_TRIPLE("Naked triple", 36),
+
+    /** A value confined to the same three columns of three rows. */
+    SWORDFISH("Swordfish", 38),
+
+    /** Three values confined to the same three cells of a unit. */
+    HIDDEN_TRIPLE("Hidden triple", 40),
+
+    /** None of the above apply and a value must be guessed. */
+    GUESS("Guess", 100);
+
+    private final String description;
+    private final int weight;
+
+    /**
+     * Create a technique.
+     *
+     * @param description human readable name
+     * @param weight difficulty weight
+     */
+    Technique(final String description, final int weight) {
+        this.description = description;
+        this.weight = weight;
+    }
+
+    /**
+     * The difficulty weight of this technique.
+     *
+     * @return weight, higher is harder
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * The human readable name of this technique.
+     *
+     * @return the name
+     */
+    public String toString() {
+        return description;
+    }
+}
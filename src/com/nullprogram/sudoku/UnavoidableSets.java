@@ -0,0 +1,138 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Sets of cells of a solution that a unique puzzle must have at least
+ * one given in.
+ *
+ * If two solutions differ only in some set of cells, a puzzle with no
+ * givens in that set cannot tell them apart, so the set is
+ * unavoidable. Every other solution found while removing givens from
+ * a puzzle yields one of these sets, and each is also seeded with the
+ * unavoidable rectangles of the solution: four cells in two rows, two
+ * columns and two boxes holding the same two values crosswise. A
+ * removal that leaves a known set without givens can be rejected
+ * without any search.
+ *
+ * Sets are stored as 81-bit cell masks split over two longs, with
+ * cells indexed 0 through 80 in row order.
+ */
+final class UnavoidableSets {
+
+    private long[] low = new long[64];
+    private long[] high = new long[64];
+    private int size;
+
+    /**
+     * Create the sets for a solution, seeded with its rectangles.
+     *
+     * @param solution a complete grid
+     */
+    UnavoidableSets(final Board solution) {
+        for (int r1 = 0; r1 < 9; r1++) {
+            for (int r2 = r1 + 1; r2 < 9; r2++) {
+                boolean band = r1 / 3 == r2 / 3;
+                for (int c1 = 0; c1 < 9; c1++) {
+                    for (int c2 = c1 + 1; c2 < 9; c2++) {
+                        if ((band || c1 / 3 == c2 / 3)
+                            && solution.get(c1, r1) == solution.get(c2, r2)
+                            && solution.get(c2, r1) == solution.get(c1, r2)) {
+                            addCells(r1 * 9 + c1, r1 * 9 + c2,
+                                     r2 * 9 + c1, r2 * 9 + c2);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of sets known.
+     *
+     * @return number of sets
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Remember the cells where another solution differs.
+     *
+     * @param solution the known solution
+     * @param other another solution of the same puzzle
+     */
+    void learn(final Board solution, final Board other) {
+        long lo = 0;
+        long hi = 0;
+        for (int i = 0; i < 81; i++) {
+            if (solution.get(i % 9, i / 9) != other.get(i % 9, i / 9)) {
+                if (i < 64) {
+                    lo |= 1L << i;
+                } else {
+                    hi |= 1L << (i - 64);
+                }
+            }
+        }
+        add(lo, hi);
+    }
+
+    /**
+     * Determine if a puzzle has a given in every known set.
+     *
+     * @param puzzle the puzzle
+     * @return false if some set has no givens, so the puzzle is not
+     *         unique
+     */
+    boolean hitsAll(final Board puzzle) {
+        long lo = 0;
+        long hi = 0;
+        for (int i = 0; i < 81; i++) {
+            if (puzzle.get(i % 9, i / 9) != 0) {
+                if (i < 64) {
+                    lo |= 1L << i;
+                } else {
+                    hi |= 1L << (i - 64);
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if ((low[i] & lo) == 0 && (high[i] & hi) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a set given as a list of cells.
+     *
+     * @param cells flat cell indexes
+     */
+    private void addCells(final int... cells) {
+        long lo = 0;
+        long hi = 0;
+        for (int i : cells) {
+            if (i < 64) {
+                lo |= 1L << i;
+            } else {
+                hi |= 1L << (i - 64);
+            }
+        }
+        add(lo, hi);
+    }
+
+    /**
+     * Add a set.
+     *
+     * @param lo mask of cells 0 through 63
+     * @param hi mask of cells 64 through 80
+     */
+    private void add(final long lo, final long hi) {
+        if (size == low.length) {
+            low = java.util.Arrays.copyOf(low, size * 2);
+            high = java.util.Arrays.copyOf(high, size * 2);
+        }
+        low[size] = lo;
+        high[size] = hi;
+        size++;
+    }
+}
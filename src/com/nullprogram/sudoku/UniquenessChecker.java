@@ -0,0 +1,393 @@
+package com.nullprogram.sudoku;
+
+/**
+ * Determines whether a board has zero, one or many solutions, giving
+ * up when cancelled or when a node budget runs out.
+ *
+ * The search runs on the checker's own flat copy of the board, with
+ * cells indexed 0 through 80 in row order. Cells with a single
+ * candidate are filled in before each branch, and the search branches
+ * on the cell with the fewest candidates, trying them from lowest to
+ * highest. Nothing is allocated once the checker exists. A board
+ * whose givens already conflict has no solutions, which is found
+ * while loading it, before any search.
+ *
+ * When the solution of a puzzle is already known, as it is while
+ * givens are being removed from a unique puzzle,
+ * {@link #hasOtherSolution(Board, Board, Board, Position...)} only
+ * needs to find one solution that differs from the known one in the
+ * removed cells, and it hands that solution back so the difference
+ * can be remembered.
+ * A checker keeps its budget and search state between calls, so each
+ * thread should use its own instance.
+ */
+public class UniquenessChecker {
+
+    /* Row, column and box of each flat cell index. */
+    private static final int[] ROW = new int[81];
+    private static final int[] COL = new int[81];
+    private static final int[] BOX = new int[81];
+
+    static {
+        for (int i = 0; i < 81; i++) {
+            ROW[i] = i / 9;
+            COL[i] = i % 9;
+            BOX[i] = (ROW[i] / 3) * 3 + COL[i] / 3;
+        }
+    }
+
+    /* Poll the cancellation when the node count is a multiple of this. */
+    private static final int POLL_MASK = 0xFFF;
+
+    private Cancellation cancellation = Cancellation.NONE;
+    private long nodeLimit = Long.MAX_VALUE;
+    private boolean stopped;
+
+    /* Search state, with each value stored as its mask bit. */
+    private final int[] cells = new int[81];
+    private final int[] rows = new int[9];
+    private final int[] cols = new int[9];
+    private final int[] boxes = new int[9];
+
+    /* Values ruled out of each cell, as masks. */
+    private final int[] excluded = new int[81];
+
+    /* First solution found, when capturing. */
+    private final int[] found = new int[81];
+    private boolean capture;
+
+    /* Cells filled by propagation, in order, so they can be undone. */
+    private final int[] trail = new int[81];
+    private int top;
+
+    /* Most constrained empty cell found by propagate(). */
+    private int best;
+
+    private long nodes;
+    private long checks;
+
+    /**
+     * Set the cancellation that checks should watch.
+     *
+     * @param cancel the cancellation to poll
+     */
+    public final void setCancellation(final Cancellation cancel) {
+        cancellation = cancel;
+    }
+
+    /**
+     * Allow checks to visit only so many more nodes in total.
+     *
+     * @param budget number of nodes, or Long.MAX_VALUE for no limit
+     */
+    public final void setBudget(final long budget) {
+        if (budget == Long.MAX_VALUE) {
+            nodeLimit = Long.MAX_VALUE;
+        } else {
+            nodeLimit = nodes + budget;
+        }
+    }
+
+    /**
+     * The number of search nodes visited by this checker so far.
+     *
+     * @return total nodes visited
+     */
+    public final long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The number of checks run by this checker so far.
+     *
+     * @return total checks
+     */
+    public final long getChecks() {
+        return checks;
+    }
+
+    /**
+     * Return the number of solutions on a board.
+     *
+     * We only care if this is 0, 1, or greater than 1, so it will
+     * never actually return higher than 2. The board is not modified.
+     *
+     * @param grid the board to check
+     * @return number of solutions
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    public final int numSolutions(final Board grid)
+        throws TimeoutException {
+        checks++;
+        if (!load(grid)) {
+            return 0;
+        }
+        return search(2);
+    }
+
+    /**
+     * Solve a board in place, filling it with its first solution.
+     *
+     * @param grid the board to solve
+     * @return true if the board has a solution
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    public final boolean solve(final Board grid) throws TimeoutException {
+        checks++;
+        if (!load(grid)) {
+            return false;
+        }
+        capture = true;
+        boolean solved;
+        try {
+            solved = search(1) > 0;
+        } finally {
+            capture = false;
+        }
+        if (solved) {
+            store(grid);
+        }
+        return solved;
+    }
+
+    /**
+     * Copy the captured solution onto a board.
+     *
+     * @param grid the board to fill
+     */
+    private void store(final Board grid) {
+        for (int i = 0; i < 81; i++) {
+            int val = Integer.numberOfTrailingZeros(found[i]);
+            grid.set(COL[i], ROW[i], (byte) val);
+        }
+    }
+
+    /**
+     * Determine whether removing some givens allowed a new solution.
+     *
+     * The puzzle with the removed cells filled in from the solution
+     * must have had only that solution. Any new solution must then
+     * differ from it in one of the removed cells, so this searches
+     * once per removed cell: with the cells before it held to the
+     * solution and that cell ruled out of its solution value. Each
+     * search stops at the first solution it finds. The board is not
+     * modified.
+     *
+     * @param grid the puzzle after removing the givens
+     * @param solution the puzzle's known solution
+     * @param other receives the other solution if there is one, or null
+     * @param removed the cells that were removed
+     * @return true if the puzzle now has more than one solution
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    public final boolean hasOtherSolution(final Board grid,
+                                          final Board solution,
+                                          final Board other,
+                                          final Position... removed)
+        throws TimeoutException {
+        for (int k = 0; k < removed.length; k++) {
+            checks++;
+            if (!load(grid)) {
+                return false;
+            }
+            for (int j = 0; j < k; j++) {
+                int i = index(removed[j]);
+                if (cells[i] == 0) {
+                    place(i, 1 << solution.get(COL[i], ROW[i]));
+                }
+            }
+            int i = index(removed[k]);
+            if (cells[i] == 0) {
+                excluded[i] = 1 << solution.get(COL[i], ROW[i]);
+                capture = other != null;
+                try {
+                    if (search(1) > 0) {
+                        if (other != null) {
+                            store(other);
+                        }
+                        return true;
+                    }
+                } finally {
+                    capture = false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The flat index of a position.
+     *
+     * @param pos the position
+     * @return cell index
+     */
+    private static int index(final Position pos) {
+        return pos.getY() * 9 + pos.getX();
+    }
+
+    /**
+     * Load a board into the search state, with no exclusions.
+     *
+     * @param grid the board
+     * @return false if two givens conflict
+     */
+    private boolean load(final Board grid) {
+        for (int i = 0; i < 9; i++) {
+            rows[i] = 0;
+            cols[i] = 0;
+            boxes[i] = 0;
+        }
+        for (int i = 0; i < 81; i++) {
+            int val = grid.get(COL[i], ROW[i]);
+            int bit = val > 0 ? 1 << val : 0;
+            if (((rows[ROW[i]] | cols[COL[i]] | boxes[BOX[i]]) & bit) != 0) {
+                return false;
+            }
+            cells[i] = bit;
+            excluded[i] = 0;
+            rows[ROW[i]] |= bit;
+            cols[COL[i]] |= bit;
+            boxes[BOX[i]] |= bit;
+        }
+        top = 0;
+        stopped = false;
+        return true;
+    }
+
+    /**
+     * Run a search over the loaded state.
+     *
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions found
+     * @throws TimeoutException if cancelled or out of budget
+     */
+    private int search(final int limit) throws TimeoutException {
+        int count = count(limit);
+        if (stopped) {
+            throw new TimeoutException();
+        }
+        return count;
+    }
+
+    /**
+     * Count solutions up to a limit.
+     *
+     * The search unwinds without a result, setting stopped, if it is
+     * cancelled or runs out of budget.
+     *
+     * @param limit stop counting once this many solutions are found
+     * @return number of solutions found
+     */
+    private int count(final int limit) {
+        nodes++;
+        if (nodes > nodeLimit
+                || ((nodes & POLL_MASK) == 0 && cancellation.isCancelled())) {
+            stopped = true;
+            return 0;
+        }
+        int mark = top;
+        if (!propagate()) {
+            return 0;
+        }
+        int i = best;
+        if (i < 0) {
+            /* Board is full i.e. solved. */
+            if (capture) {
+                System.arraycopy(cells, 0, found, 0, 81);
+            }
+            undo(mark);
+            return 1;
+        }
+
+        int r = ROW[i];
+        int c = COL[i];
+        int b = BOX[i];
+        int possible = Board.ALL
+            & ~(rows[r] | cols[c] | boxes[b] | excluded[i]);
+        int total = 0;
+        while (possible != 0 && total < limit && !stopped) {
+            int bit = possible & -possible;
+            possible ^= bit;
+            place(i, bit);
+            total += count(limit - total);
+            remove(i);
+        }
+        undo(mark);
+        return total;
+    }
+
+    /**
+     * Fill in every empty cell that has exactly one candidate.
+     *
+     * Afterwards best holds the empty cell with the fewest candidates,
+     * or -1 if the board is full. On a contradiction the cells filled
+     * by this call are emptied again.
+     *
+     * @return false if some empty cell has no candidates
+     */
+    private boolean propagate() {
+        int mark = top;
+        boolean changed;
+        do {
+            changed = false;
+            best = -1;
+            int bestCount = 10;
+            for (int i = 0; i < 81; i++) {
+                if (cells[i] == 0) {
+                    int possible = Board.ALL & ~(rows[ROW[i]] | cols[COL[i]]
+                                                 | boxes[BOX[i]] | excluded[i]);
+                    int n = Integer.bitCount(possible);
+                    if (n == 0) {
+                        undo(mark);
+                        return false;
+                    } else if (n == 1) {
+                        place(i, possible);
+                        trail[top++] = i;
+                        changed = true;
+                    } else if (n < bestCount) {
+                        best = i;
+                        bestCount = n;
+                    }
+                }
+            }
+        } while (changed);
+        return true;
+    }
+
+    /**
+     * Empty the cells filled by propagation since a mark.
+     *
+     * @param mark trail size to return to
+     */
+    private void undo(final int mark) {
+        while (top > mark) {
+            remove(trail[--top]);
+        }
+    }
+
+    /**
+     * Fill a cell.
+     *
+     * @param i flat cell index
+     * @param bit mask bit of the value
+     */
+    private void place(final int i, final int bit) {
+        cells[i] = bit;
+        rows[ROW[i]] |= bit;
+        cols[COL[i]] |= bit;
+        boxes[BOX[i]] |= bit;
+    }
+
+    /**
+     * Empty a cell.
+     *
+     * @param i flat cell index
+     */
+    private void remove(final int i) {
+        int bit = ~cells[i];
+        cells[i] = 0;
+        rows[ROW[i]] &= bit;
+        cols[COL[i]] &= bit;
+        boxes[BOX[i]] &= bit;
+    }
+}
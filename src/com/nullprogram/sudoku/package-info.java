@@ -1,4 +1,16 @@
 /**
  * An interactive Sudoku game and generator.
+ *
+ * The {@link com.nullprogram.sudoku.Board}, {@link
+ * com.nullprogram.sudoku.Solver}, {@link com.nullprogram.sudoku.Generator}
+ * and {@link com.nullprogram.sudoku.UniquenessChecker} classes make up
+ * the engine and do not depend on AWT, so they can be used without a
+ * display. {@link com.nullprogram.sudoku.Grid}, {@link
+ * com.nullprogram.sudoku.GridSolver} and {@link
+ * com.nullprogram.sudoku.GridGenerator} are the same for grids larger
+ * than 9x9. {@link com.nullprogram.sudoku.Sudoku} and {@link
+ * com.nullprogram.sudoku.SudokuApplet} are the Swing front ends, and
+ * {@link com.nullprogram.sudoku.PuzzleServer} serves the engine over
+ * HTTP.
  */
 package com.nullprogram.sudoku;